@@ -1,88 +1,75 @@
 package com.mycompany.servidormulti;
 
 import java.sql.*;
-import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.sqlite.SQLiteConfig;
 
 public class BaseDatos {
-    private static final String DB_URL = "jdbc:sqlite:chat.db";
+    private static final int ESPERA_OCUPADA_MS = 5000;
+    private static final int MMAP_BYTES = 256 * 1024 * 1024;
+    private static final int CACHE_KIB = 8 * 1024;
+    
+    // Todas las escrituras pasan por el escritor, un solo hilo que las confirma por lotes, así
+    // nunca compiten entre ellas por el archivo ni hace falta ordenarlas en Java. Las lecturas
+    // van directo al pool. Cada conexión espera hasta ESPERA_OCUPADA_MS a que se libere el
+    // archivo en lugar de fallar con SQLITE_BUSY (un checkpoint, otra herramienta con el archivo
+    // abierto), y las transacciones empiezan IMMEDIATE: reservan la escritura al abrirse.
+    private final EscritorBD escritor;
+    
+    // Las conexiones y sus sentencias preparadas viven en el pool; cada método toma una, la
+    // usa sin cerrar las sentencias y la devuelve al salir del try.
+    private final PoolConexiones pool;
+    
+    // Casi todo son lecturas (no leídos, miembros, ranking) y escrituras pequeñas. Con WAL las
+    // lecturas no esperan a la escritura en curso ni la frenan; synchronous=NORMAL solo hace
+    // fsync en los checkpoints (un corte de luz puede perder las últimas transacciones, nunca
+    // corromper el archivo). mmap y una caché de páginas más grande ahorran copias en las
+    // lecturas repetidas. Son por conexión y se aplican al abrir cada una.
+    public BaseDatos(String ruta, int conexiones) {
+        SQLiteConfig configuracion = new SQLiteConfig();
+        configuracion.setBusyTimeout(ESPERA_OCUPADA_MS);
+        configuracion.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        configuracion.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        configuracion.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        configuracion.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(MMAP_BYTES));
+        configuracion.setCacheSize(-CACHE_KIB);
+        this.pool = new PoolConexiones("jdbc:sqlite:" + ruta, configuracion.toProperties(), conexiones);
+        this.escritor = new EscritorBD(pool);
+    }
+    
+    public void vaciarEscrituras() {
+        escritor.vaciar();
+    }
+
+    // Lo que quedaba en la cola del escritor se confirma antes de cerrar las conexiones.
+    public void cerrar() {
+        escritor.close();
+        pool.cerrar();
+    }
+    
+    // Los métodos que siguen regresando su resultado esperan el commit. Si la escritura falló
+    // se registra y se regresa siFalla, como cuando cada método escribía por su cuenta.
+    private static <T> T esperar(CompletableFuture<T> escritura, String error, T siFalla) {
+        try {
+            return escritura.join();
+        } catch (CompletionException e) {
+            System.err.println(error + ": " + e.getCause().getMessage());
+            return siFalla;
+        }
+    }
     
     public void inicializar() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
-            
-            // Tabla de usuarios
-            stmt.execute("CREATE TABLE IF NOT EXISTS usuarios (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "nombre TEXT UNIQUE NOT NULL," +
-                    "password TEXT NOT NULL," +
-                    "fecha_registro TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
-            
-            // Tabla de bloqueos
-            stmt.execute("CREATE TABLE IF NOT EXISTS bloqueados (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "usuario_que_bloquea TEXT NOT NULL," +
-                    "usuario_bloqueado TEXT NOT NULL," +
-                    "fecha_bloqueo TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "UNIQUE(usuario_que_bloquea, usuario_bloqueado)," +
-                    "FOREIGN KEY(usuario_que_bloquea) REFERENCES usuarios(nombre)," +
-                    "FOREIGN KEY(usuario_bloqueado) REFERENCES usuarios(nombre))");
-            
-            // Tabla de estadísticas de juego
-            stmt.execute("CREATE TABLE IF NOT EXISTS estadisticas_gato (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "jugador TEXT NOT NULL," +
-                    "victorias INTEGER DEFAULT 0," +
-                    "empates INTEGER DEFAULT 0," +
-                    "derrotas INTEGER DEFAULT 0," +
-                    "puntos INTEGER DEFAULT 0," +
-                    "UNIQUE(jugador)," +
-                    "FOREIGN KEY(jugador) REFERENCES usuarios(nombre))");
-            
-            // Tabla de historial de partidas entre jugadores
-            stmt.execute("CREATE TABLE IF NOT EXISTS historial_partidas (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "jugador1 TEXT NOT NULL," +
-                    "jugador2 TEXT NOT NULL," +
-                    "ganador TEXT," +
-                    "fecha_partida TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "FOREIGN KEY(jugador1) REFERENCES usuarios(nombre)," +
-                    "FOREIGN KEY(jugador2) REFERENCES usuarios(nombre))");
+        try (PoolConexiones.Conexion conn = pool.tomar();
+             Statement stmt = conn.crearSentencia()) {
             
-            // Tabla de grupos
-            stmt.execute("CREATE TABLE IF NOT EXISTS grupos (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "nombre TEXT UNIQUE NOT NULL," +
-                    "creador TEXT NOT NULL," +
-                    "fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
-            
-            // Tabla de miembros de grupos
-            stmt.execute("CREATE TABLE IF NOT EXISTS miembros_grupo (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "grupo_nombre TEXT NOT NULL," +
-                    "usuario TEXT NOT NULL," +
-                    "fecha_union TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
-                    "UNIQUE(grupo_nombre, usuario))");
-            
-            // Tabla de mensajes de grupo
-            stmt.execute("CREATE TABLE IF NOT EXISTS mensajes_grupo (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "grupo_nombre TEXT NOT NULL," +
-                    "remitente TEXT NOT NULL," +
-                    "mensaje TEXT NOT NULL," +
-                    "fecha_envio TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
-            
-            // Tabla de mensajes leídos por usuario
-            stmt.execute("CREATE TABLE IF NOT EXISTS mensajes_leidos (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "usuario TEXT NOT NULL," +
-                    "grupo_nombre TEXT NOT NULL," +
-                    "ultimo_mensaje_id INTEGER DEFAULT 0," +
-                    "UNIQUE(usuario, grupo_nombre))");
+            MigracionesBD.aplicar(conn);
             
             // Crear grupo "Todos" si no existe
-            crearGrupoTodos();
+            crearGrupoTodos(stmt);
             
             System.out.println("Base de datos inicializada correctamente");
         } catch (SQLException e) {
@@ -90,89 +77,64 @@ public class BaseDatos {
         }
     }
     
-    private void crearGrupoTodos() {
-        String sql = "INSERT OR IGNORE INTO grupos (nombre, creador) VALUES ('Todos', 'SISTEMA')";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.executeUpdate();
+    private void crearGrupoTodos(Statement stmt) {
+        String sql = "INSERT OR IGNORE INTO grupos (nombre, creador_id) VALUES ('Todos', NULL)";
+        try {
+            stmt.executeUpdate(sql);
         } catch (SQLException e) {
             System.err.println("Error creando grupo Todos: " + e.getMessage());
         }
     }
     
-    public synchronized void guardarUsuario(String nombre, String password) {
-        String sqlUsuario = "INSERT INTO usuarios (nombre, password) VALUES (?, ?)";
-        String sqlEstadisticas = "INSERT OR IGNORE INTO estadisticas_gato (jugador, victorias, empates, derrotas, puntos) VALUES (?, 0, 0, 0, 0)";
-        String sqlUnirTodos = "INSERT OR IGNORE INTO miembros_grupo (grupo_nombre, usuario) VALUES ('Todos', ?)";
+    // El id lo asigna RegistroSesiones; se guarda tal cual para que memoria y base coincidan.
+    // false si no se pudo guardar; quien llama deshace el registro en memoria.
+    public boolean guardarUsuario(int id, String nombre, String password) {
+        String sqlUsuario = "INSERT INTO usuarios (id, nombre, password) VALUES (?, ?, ?)";
+        String sqlEstadisticas = "INSERT OR IGNORE INTO estadisticas_gato (jugador_id, victorias, empates, derrotas, puntos) VALUES (?, 0, 0, 0, 0)";
+        String sqlUnirTodos = "INSERT OR IGNORE INTO miembros_grupo (grupo_id, usuario_id) " + 
+                              "SELECT id, ? FROM grupos WHERE nombre = 'Todos'";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
-            
-            try {
-                // Insertar usuario
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlUsuario)) {
-                    pstmt.setString(1, nombre);
-                    pstmt.setString(2, password);
-                    pstmt.executeUpdate();
-                }
-                
-                // Inicializar estadísticas
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlEstadisticas)) {
-                    pstmt.setString(1, nombre);
-                    pstmt.executeUpdate();
-                }
-                
-                // Unir automáticamente al grupo "Todos"
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlUnirTodos)) {
-                    pstmt.setString(1, nombre);
-                    pstmt.executeUpdate();
-                }
-                
-                conn.commit();
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            }
-        } catch (SQLException e) {
-            System.err.println("Error guardando usuario: " + e.getMessage());
-        }
-    }
-    
-    private void inicializarEstadisticasLote(Connection conn, String jugador) throws SQLException {
-        String sql = "INSERT OR IGNORE INTO estadisticas_gato (jugador, victorias, empates, derrotas, puntos) VALUES (?, 0, 0, 0, 0)";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, jugador);
-            pstmt.executeUpdate();
-        }
+        return esperar(escritor.enviar(conn -> {
+            // Insertar usuario
+            PreparedStatement insertar = conn.preparar(sqlUsuario);
+            insertar.setInt(1, id);
+            insertar.setString(2, nombre);
+            insertar.setString(3, password);
+            insertar.executeUpdate();
+            
+            // Inicializar estadísticas
+            PreparedStatement estadisticas = conn.preparar(sqlEstadisticas);
+            estadisticas.setInt(1, id);
+            estadisticas.executeUpdate();
+            
+            // Unir automáticamente al grupo "Todos"
+            PreparedStatement unirTodos = conn.preparar(sqlUnirTodos);
+            unirTodos.setInt(1, id);
+            unirTodos.executeUpdate();
+            return true;
+        }), "Error guardando usuario", false);
     }
     
-    public HashMap<String, String> cargarTodosLosUsuarios() {
-        HashMap<String, String> usuarios = new HashMap<>();
-        String sqlSelect = "SELECT nombre, password FROM usuarios";
+    public List<Usuario> cargarTodosLosUsuarios() {
+        List<Usuario> usuarios = new ArrayList<>();
+        String sqlSelect = "SELECT id, nombre, password FROM usuarios ORDER BY id";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
             // Primero cargar todos los usuarios
-            try (Statement stmt = conn.createStatement();
+            try (Statement stmt = conn.crearSentencia();
                  ResultSet rs = stmt.executeQuery(sqlSelect)) {
                 
                 while (rs.next()) {
-                    String nombre = rs.getString("nombre");
-                    usuarios.put(nombre, rs.getString("password"));
+                    usuarios.add(new Usuario(rs.getInt("id"), rs.getString("nombre"), rs.getString("password")));
                 }
             }
             
-            // Luego inicializar estadísticas para todos en una sola transacción
+            // Luego inicializar estadísticas y unir a "Todos" a los que falten, con dos sentencias
             conn.setAutoCommit(false);
-            try {
-                for (String nombre : usuarios.keySet()) {
-                    inicializarEstadisticasLote(conn, nombre);
-                    // Unir al grupo "Todos" si no está
-                    String sqlUnirTodos = "INSERT OR IGNORE INTO miembros_grupo (grupo_nombre, usuario) VALUES ('Todos', ?)";
-                    try (PreparedStatement pstmt = conn.prepareStatement(sqlUnirTodos)) {
-                        pstmt.setString(1, nombre);
-                        pstmt.executeUpdate();
-                    }
-                }
+            try (Statement stmt = conn.crearSentencia()) {
+                stmt.executeUpdate("INSERT OR IGNORE INTO estadisticas_gato (jugador_id) SELECT id FROM usuarios");
+                stmt.executeUpdate("INSERT OR IGNORE INTO miembros_grupo (grupo_id, usuario_id) " +
+                                   "SELECT g.id, u.id FROM grupos g, usuarios u WHERE g.nombre = 'Todos'");
                 conn.commit();
             } catch (SQLException e) {
                 conn.rollback();
@@ -185,179 +147,144 @@ public class BaseDatos {
         return usuarios;
     }
     
-    // ==================== MÉTODOS DE GRUPOS ====================
-    
-    public synchronized boolean crearGrupo(String nombreGrupo, String creador) {
-        String sql = "INSERT INTO grupos (nombre, creador) VALUES (?, ?)";
-        String sqlUnir = "INSERT INTO miembros_grupo (grupo_nombre, usuario) VALUES (?, ?)";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
+    // Pares {quien bloquea, bloqueado} para llenar la tabla de bloqueos en memoria.
+    public List<int[]> cargarBloqueos() {
+        List<int[]> pares = new ArrayList<>();
+        String sql = "SELECT usuario_id, bloqueado_id FROM bloqueados";
+        try (PoolConexiones.Conexion conn = pool.tomar();
+             ResultSet rs = conn.preparar(sql).executeQuery()) {
             
-            try {
-                // Crear el grupo
-                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                    pstmt.setString(1, nombreGrupo);
-                    pstmt.setString(2, creador);
-                    pstmt.executeUpdate();
-                }
-                
-                // Unir al creador automáticamente
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlUnir)) {
-                    pstmt.setString(1, nombreGrupo);
-                    pstmt.setString(2, creador);
-                    pstmt.executeUpdate();
-                }
-                
-                conn.commit();
-                System.out.println("Grupo '" + nombreGrupo + "' creado por " + creador);
-                return true;
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
+            while (rs.next()) {
+                pares.add(new int[]{rs.getInt(1), rs.getInt(2)});
             }
         } catch (SQLException e) {
-            System.err.println("Error creando grupo: " + e.getMessage());
-            return false;
+            System.err.println("Error cargando bloqueos: " + e.getMessage());
         }
+        return pares;
     }
     
-    public synchronized boolean eliminarGrupo(String nombreGrupo) {
+    // ==================== MÉTODOS DE GRUPOS ====================
+    
+    // Los grupos se siguen pidiendo por nombre; el id se resuelve dentro de cada sentencia.
+    private static final String ID_GRUPO = "(SELECT id FROM grupos WHERE nombre = ?)";
+    
+    public boolean crearGrupo(String nombreGrupo, int creador) {
+        String sql = "INSERT INTO grupos (nombre, creador_id) VALUES (?, ?)";
+        String sqlUnir = "INSERT INTO miembros_grupo (grupo_id, usuario_id) VALUES (?, ?)";
+        
+        boolean creado = esperar(escritor.enviar(conn -> {
+            // Crear el grupo
+            long idGrupo;
+            PreparedStatement crear = conn.prepararConClaves(sql);
+            crear.setString(1, nombreGrupo);
+            crear.setInt(2, creador);
+            crear.executeUpdate();
+            try (ResultSet rs = crear.getGeneratedKeys()) {
+                rs.next();
+                idGrupo = rs.getLong(1);
+            }
+            
+            // Unir al creador automáticamente
+            PreparedStatement unir = conn.preparar(sqlUnir);
+            unir.setLong(1, idGrupo);
+            unir.setInt(2, creador);
+            unir.executeUpdate();
+            return true;
+        }), "Error creando grupo", false);
+        
+        if (creado) System.out.println("Grupo '" + nombreGrupo + "' creado por el usuario " + creador);
+        return creado;
+    }
+    
+    public boolean eliminarGrupo(String nombreGrupo) {
         if ("Todos".equals(nombreGrupo)) {
             return false; // No se puede eliminar el grupo "Todos"
         }
         
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
-            
-            try {
-                // Eliminar mensajes del grupo
-                String sqlMensajes = "DELETE FROM mensajes_grupo WHERE grupo_nombre = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlMensajes)) {
-                    pstmt.setString(1, nombreGrupo);
-                    pstmt.executeUpdate();
-                }
-                
-                // Eliminar registros de mensajes leídos
-                String sqlLeidos = "DELETE FROM mensajes_leidos WHERE grupo_nombre = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlLeidos)) {
-                    pstmt.setString(1, nombreGrupo);
-                    pstmt.executeUpdate();
-                }
-                
-                // Eliminar miembros del grupo
-                String sqlMiembros = "DELETE FROM miembros_grupo WHERE grupo_nombre = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlMiembros)) {
-                    pstmt.setString(1, nombreGrupo);
-                    pstmt.executeUpdate();
-                }
-                
-                // Eliminar el grupo
-                String sqlGrupo = "DELETE FROM grupos WHERE nombre = ?";
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlGrupo)) {
-                    pstmt.setString(1, nombreGrupo);
-                    pstmt.executeUpdate();
-                }
-                
-                conn.commit();
-                System.out.println("Grupo '" + nombreGrupo + "' eliminado");
-                return true;
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            }
-        } catch (SQLException e) {
-            System.err.println("Error eliminando grupo: " + e.getMessage());
-            return false;
-        }
+        boolean eliminado = esperar(escritor.enviar(conn -> {
+            // Eliminar mensajes del grupo
+            String sqlMensajes = "DELETE FROM mensajes_grupo WHERE grupo_id = " + ID_GRUPO;
+            borrar(conn, sqlMensajes, nombreGrupo);
+            
+            // Eliminar registros de mensajes leídos
+            String sqlLeidos = "DELETE FROM mensajes_leidos WHERE grupo_id = " + ID_GRUPO;
+            borrar(conn, sqlLeidos, nombreGrupo);
+            
+            // Eliminar miembros del grupo
+            String sqlMiembros = "DELETE FROM miembros_grupo WHERE grupo_id = " + ID_GRUPO;
+            borrar(conn, sqlMiembros, nombreGrupo);
+            
+            // Eliminar el grupo
+            String sqlGrupo = "DELETE FROM grupos WHERE nombre = ?";
+            borrar(conn, sqlGrupo, nombreGrupo);
+            return true;
+        }), "Error eliminando grupo", false);
+        
+        if (eliminado) System.out.println("Grupo '" + nombreGrupo + "' eliminado");
+        return eliminado;
+    }
+    
+    private void borrar(PoolConexiones.Conexion conn, String sql, String nombreGrupo) throws SQLException {
+        PreparedStatement pstmt = conn.preparar(sql);
+        pstmt.setString(1, nombreGrupo);
+        pstmt.executeUpdate();
     }
     
-    public synchronized boolean unirseAGrupo(String usuario, String nombreGrupo) {
-        String sql = "INSERT OR IGNORE INTO miembros_grupo (grupo_nombre, usuario) VALUES (?, ?)";
+    public boolean unirseAGrupo(int usuario, String nombreGrupo) {
+        String sql = "INSERT OR IGNORE INTO miembros_grupo (grupo_id, usuario_id) SELECT id, ? FROM grupos WHERE nombre = ?";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, nombreGrupo);
-            pstmt.setString(2, usuario);
-            int filas = pstmt.executeUpdate();
-            
-            if (filas > 0) {
-                System.out.println(usuario + " se unió al grupo '" + nombreGrupo + "'");
-                return true;
-            }
-            return false;
-        } catch (SQLException e) {
-            System.err.println("Error uniéndose al grupo: " + e.getMessage());
-            return false;
-        }
+        boolean unido = esperar(escritor.enviar(conn -> {
+            PreparedStatement pstmt = conn.preparar(sql);
+            pstmt.setInt(1, usuario);
+            pstmt.setString(2, nombreGrupo);
+            return pstmt.executeUpdate() > 0;
+        }), "Error uniéndose al grupo", false);
+        
+        if (unido) System.out.println("El usuario " + usuario + " se unió al grupo '" + nombreGrupo + "'");
+        return unido;
     }
     
-    public synchronized boolean salirDeGrupo(String usuario, String nombreGrupo) {
+    public boolean salirDeGrupo(int usuario, String nombreGrupo) {
         if ("Todos".equals(nombreGrupo)) {
             return false; // No se puede salir del grupo "Todos"
         }
         
-        String sql = "DELETE FROM miembros_grupo WHERE grupo_nombre = ? AND usuario = ?";
+        String sql = "DELETE FROM miembros_grupo WHERE grupo_id = " + ID_GRUPO + " AND usuario_id = ?";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        boolean salio = esperar(escritor.enviar(conn -> {
+            PreparedStatement pstmt = conn.preparar(sql);
             pstmt.setString(1, nombreGrupo);
-            pstmt.setString(2, usuario);
-            int filas = pstmt.executeUpdate();
-            
-            if (filas > 0) {
-                System.out.println(usuario + " salió del grupo '" + nombreGrupo + "'");
-                return true;
-            }
-            return false;
-        } catch (SQLException e) {
-            System.err.println("Error saliendo del grupo: " + e.getMessage());
-            return false;
-        }
-    }
-    
-    public boolean existeGrupo(String nombreGrupo) {
-        String sql = "SELECT COUNT(*) FROM grupos WHERE nombre = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, nombreGrupo);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-        } catch (SQLException e) {
-            System.err.println("Error verificando existencia de grupo: " + e.getMessage());
-        }
-        return false;
+            pstmt.setInt(2, usuario);
+            return pstmt.executeUpdate() > 0;
+        }), "Error saliendo del grupo", false);
+        
+        if (salio) System.out.println("El usuario " + usuario + " salió del grupo '" + nombreGrupo + "'");
+        return salio;
     }
     
-    public boolean esMiembroDeGrupo(String usuario, String nombreGrupo) {
-        String sql = "SELECT COUNT(*) FROM miembros_grupo WHERE grupo_nombre = ? AND usuario = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, nombreGrupo);
-            pstmt.setString(2, usuario);
-            ResultSet rs = pstmt.executeQuery();
+    // Catálogo para GrupoManager; los miembros de cada grupo se piden aparte cuando hacen falta.
+    public List<String> obtenerNombresGrupos() {
+        List<String> nombres = new ArrayList<>();
+        try (PoolConexiones.Conexion conn = pool.tomar();
+             ResultSet rs = conn.preparar("SELECT nombre FROM grupos").executeQuery()) {
             
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
+            while (rs.next()) {
+                nombres.add(rs.getString(1));
             }
         } catch (SQLException e) {
-            System.err.println("Error verificando membresía: " + e.getMessage());
+            System.err.println("Error obteniendo grupos: " + e.getMessage());
         }
-        return false;
+        return nombres;
     }
     
     public List<String> obtenerGruposDisponibles() {
         List<String> grupos = new ArrayList<>();
-        String sql = "SELECT nombre, creador, " +
-                     "(SELECT COUNT(*) FROM miembros_grupo WHERE grupo_nombre = grupos.nombre) as miembros " +
-                     "FROM grupos ORDER BY nombre";
+        String sql = "SELECT g.nombre, COALESCE(u.nombre, 'SISTEMA') as creador, " +
+                     "(SELECT COUNT(*) FROM miembros_grupo WHERE grupo_id = g.id) as miembros " +
+                     "FROM grupos g LEFT JOIN usuarios u ON u.id = g.creador_id ORDER BY g.nombre";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (PoolConexiones.Conexion conn = pool.tomar();
+             ResultSet rs = conn.preparar(sql).executeQuery()) {
             
             while (rs.next()) {
                 String nombre = rs.getString("nombre");
@@ -372,17 +299,18 @@ public class BaseDatos {
         return grupos;
     }
     
-    public List<String> obtenerMisGrupos(String usuario) {
+    public List<String> obtenerMisGrupos(int usuario) {
         List<String> grupos = new ArrayList<>();
-        String sql = "SELECT grupo_nombre FROM miembros_grupo WHERE usuario = ? ORDER BY grupo_nombre";
+        String sql = "SELECT g.nombre FROM miembros_grupo m JOIN grupos g ON g.id = m.grupo_id " +
+                     "WHERE m.usuario_id = ? ORDER BY g.nombre";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, usuario);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                grupos.add(rs.getString("grupo_nombre"));
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            PreparedStatement pstmt = conn.preparar(sql);
+            pstmt.setInt(1, usuario);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    grupos.add(rs.getString("nombre"));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo mis grupos: " + e.getMessage());
@@ -391,84 +319,98 @@ public class BaseDatos {
         return grupos;
     }
     
-    public List<String> obtenerMiembrosGrupo(String nombreGrupo) {
-        List<String> miembros = new ArrayList<>();
-        String sql = "SELECT usuario FROM miembros_grupo WHERE grupo_nombre = ? ORDER BY usuario";
+    // Para cargar los miembros de un grupo en GrupoManager: solo los ids, sin unir con usuarios.
+    public int[] obtenerIdsMiembrosGrupo(String nombreGrupo) {
+        String sql = "SELECT usuario_id FROM miembros_grupo WHERE grupo_id = " + ID_GRUPO;
+        int[] ids = new int[16];
+        int total = 0;
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            PreparedStatement pstmt = conn.preparar(sql);
             pstmt.setString(1, nombreGrupo);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                miembros.add(rs.getString("usuario"));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (total == ids.length) ids = Arrays.copyOf(ids, total * 2);
+                    ids[total++] = rs.getInt(1);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo miembros del grupo: " + e.getMessage());
         }
         
-        return miembros;
+        return Arrays.copyOf(ids, total);
     }
     
     // ==================== MÉTODOS DE MENSAJES DE GRUPO ====================
     
-    public synchronized long guardarMensajeGrupo(String nombreGrupo, String remitente, String mensaje) {
-        String sql = "INSERT INTO mensajes_grupo (grupo_nombre, remitente, mensaje) VALUES (?, ?, ?)";
+    // El futuro se completa con el id ya confirmado, o con el error si no se pudo guardar.
+    public CompletableFuture<Long> guardarMensajeGrupo(String nombreGrupo, int remitente, String mensaje) {
+        String sql = "INSERT INTO mensajes_grupo (grupo_id, remitente_id, mensaje) VALUES (" + ID_GRUPO + ", ?, ?)";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        CompletableFuture<Long> id = escritor.enviar(conn -> {
+            PreparedStatement pstmt = conn.prepararConClaves(sql);
             pstmt.setString(1, nombreGrupo);
-            pstmt.setString(2, remitente);
+            pstmt.setInt(2, remitente);
             pstmt.setString(3, mensaje);
             pstmt.executeUpdate();
             
-            ResultSet rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                if (!rs.next()) throw new SQLException("No se generó id para el mensaje");
                 return rs.getLong(1);
             }
-        } catch (SQLException e) {
-            System.err.println("Error guardando mensaje: " + e.getMessage());
-        }
-        return -1;
+        });
+        id.whenComplete((valor, e) -> {
+            if (e != null) System.err.println("Error guardando mensaje: " + e.getMessage());
+        });
+        return id;
     }
     
-    public synchronized void actualizarUltimoMensajeLeido(String usuario, String nombreGrupo, long idMensaje) {
-        String sql = "INSERT OR REPLACE INTO mensajes_leidos (usuario, grupo_nombre, ultimo_mensaje_id) VALUES (?, ?, ?)";
+    // Las marcas que MarcasLeido junta en memoria, en una sola escritura con un upsert por
+    // marca. Se queda la mayor, así una marca repetida o atrasada no hace retroceder a nadie.
+    // La de un grupo que ya se eliminó no inserta nada.
+    public CompletableFuture<Void> guardarMarcasLeido(List<MarcasLeido.Pendiente> marcas) {
+        String sql = "INSERT INTO mensajes_leidos (usuario_id, grupo_id, ultimo_mensaje_id) " +
+                     "SELECT ?, id, ? FROM grupos WHERE nombre = ? " +
+                     "ON CONFLICT(usuario_id, grupo_id) DO UPDATE SET " +
+                     "ultimo_mensaje_id = MAX(ultimo_mensaje_id, excluded.ultimo_mensaje_id)";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, usuario);
-            pstmt.setString(2, nombreGrupo);
-            pstmt.setLong(3, idMensaje);
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Error actualizando último mensaje leído: " + e.getMessage());
-        }
+        return escritor.enviar(conn -> {
+            PreparedStatement pstmt = conn.preparar(sql);
+            for (MarcasLeido.Pendiente marca : marcas) {
+                pstmt.setInt(1, marca.usuario);
+                pstmt.setLong(2, marca.idMensaje);
+                pstmt.setString(3, marca.grupo);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            return null;
+        });
     }
     
-    public List<MensajeGrupo> obtenerMensajesNoLeidos(String usuario, String nombreGrupo) {
+    // leido es la marca en memoria de MarcasLeido; cuenta la mayor entre esa y la guardada.
+    public List<MensajeGrupo> obtenerMensajesNoLeidos(int usuario, String nombreGrupo, long leido) {
         List<MensajeGrupo> mensajes = new ArrayList<>();
         
-        String sql = "SELECT m.id, m.remitente, m.mensaje, m.fecha_envio " +
-                     "FROM mensajes_grupo m " +
-                     "WHERE m.grupo_nombre = ? " +
-                     "AND m.id > COALESCE((SELECT ultimo_mensaje_id FROM mensajes_leidos WHERE usuario = ? AND grupo_nombre = ?), 0) " +
+        String sql = "SELECT m.id, u.nombre as remitente, m.mensaje, m.fecha_envio " +
+                     "FROM mensajes_grupo m JOIN usuarios u ON u.id = m.remitente_id " +
+                     "WHERE m.grupo_id = " + ID_GRUPO + " " +
+                     "AND m.id > MAX(COALESCE((SELECT ultimo_mensaje_id FROM mensajes_leidos WHERE usuario_id = ? AND grupo_id = m.grupo_id), 0), ?) " +
                      "ORDER BY m.id";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            PreparedStatement pstmt = conn.preparar(sql);
             pstmt.setString(1, nombreGrupo);
-            pstmt.setString(2, usuario);
-            pstmt.setString(3, nombreGrupo);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                MensajeGrupo mensaje = new MensajeGrupo();
-                mensaje.id = rs.getLong("id");
-                mensaje.remitente = rs.getString("remitente");
-                mensaje.mensaje = rs.getString("mensaje");
-                mensaje.fechaEnvio = rs.getString("fecha_envio");
-                mensajes.add(mensaje);
+            pstmt.setInt(2, usuario);
+            pstmt.setLong(3, leido);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    MensajeGrupo mensaje = new MensajeGrupo();
+                    mensaje.id = rs.getLong("id");
+                    mensaje.remitente = rs.getString("remitente");
+                    mensaje.mensaje = rs.getString("mensaje");
+                    mensaje.fechaEnvio = rs.getString("fecha_envio");
+                    mensajes.add(mensaje);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo mensajes no leídos: " + e.getMessage());
@@ -477,20 +419,20 @@ public class BaseDatos {
         return mensajes;
     }
     
-    public int contarMensajesNoLeidos(String usuario, String nombreGrupo) {
+    public int contarMensajesNoLeidos(int usuario, String nombreGrupo, long leido) {
         String sql = "SELECT COUNT(*) FROM mensajes_grupo m " +
-                     "WHERE m.grupo_nombre = ? " +
-                     "AND m.id > COALESCE((SELECT ultimo_mensaje_id FROM mensajes_leidos WHERE usuario = ? AND grupo_nombre = ?), 0)";
+                     "WHERE m.grupo_id = " + ID_GRUPO + " " +
+                     "AND m.id > MAX(COALESCE((SELECT ultimo_mensaje_id FROM mensajes_leidos WHERE usuario_id = ? AND grupo_id = m.grupo_id), 0), ?)";
         
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            PreparedStatement pstmt = conn.preparar(sql);
             pstmt.setString(1, nombreGrupo);
-            pstmt.setString(2, usuario);
-            pstmt.setString(3, nombreGrupo);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1);
+            pstmt.setInt(2, usuario);
+            pstmt.setLong(3, leido);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error contando mensajes no leídos: " + e.getMessage());
@@ -498,66 +440,62 @@ public class BaseDatos {
         return 0;
     }
     
-    
-    public synchronized void registrarResultadoPartida(String jugador1, String jugador2, String ganador) {
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false);
+    // ganador en 0 es empate.
+    public void registrarResultadoPartida(int jugador1, int jugador2, int ganador) {
+        String sqlHistorial = "INSERT INTO historial_partidas (jugador1_id, jugador2_id, ganador_id) VALUES (?, ?, ?)";
+        
+        boolean registrado = esperar(escritor.enviar(conn -> {
+            // Registrar en historial
+            PreparedStatement pstmt = conn.preparar(sqlHistorial);
+            pstmt.setInt(1, jugador1);
+            pstmt.setInt(2, jugador2);
+            if (ganador == 0) {
+                pstmt.setNull(3, Types.INTEGER);
+            } else {
+                pstmt.setInt(3, ganador);
+            }
+            pstmt.executeUpdate();
             
-            try {
-                // Registrar en historial
-                String sqlHistorial = "INSERT INTO historial_partidas (jugador1, jugador2, ganador) VALUES (?, ?, ?)";
-                try (PreparedStatement pstmt = conn.prepareStatement(sqlHistorial)) {
-                    pstmt.setString(1, jugador1);
-                    pstmt.setString(2, jugador2);
-                    pstmt.setString(3, ganador);
-                    pstmt.executeUpdate();
-                }
-                
-                // Actualizar estadísticas
-                if ("EMPATE".equals(ganador)) {
-                    actualizarEstadistica(conn, jugador1, 0, 1, 0);
-                    actualizarEstadistica(conn, jugador2, 0, 1, 0);
-                } else {
-                    String perdedor = ganador.equals(jugador1) ? jugador2 : jugador1;
-                    actualizarEstadistica(conn, ganador, 1, 0, 0);
-                    actualizarEstadistica(conn, perdedor, 0, 0, 1);
-                }
-                
-                conn.commit();
-                System.out.println("Resultado registrado: " + jugador1 + " vs " + jugador2 + " - Ganador: " + ganador);
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
+            // Actualizar estadísticas
+            if (ganador == 0) {
+                actualizarEstadistica(conn, jugador1, 0, 1, 0);
+                actualizarEstadistica(conn, jugador2, 0, 1, 0);
+            } else {
+                int perdedor = ganador == jugador1 ? jugador2 : jugador1;
+                actualizarEstadistica(conn, ganador, 1, 0, 0);
+                actualizarEstadistica(conn, perdedor, 0, 0, 1);
             }
-        } catch (SQLException e) {
-            System.err.println("Error registrando resultado: " + e.getMessage());
+            return true;
+        }), "Error registrando resultado", false);
+        
+        if (registrado) {
+            System.out.println("Resultado registrado: " + jugador1 + " vs " + jugador2 + " - Ganador: " + (ganador == 0 ? "EMPATE" : ganador));
         }
     }
     
-    private void actualizarEstadistica(Connection conn, String jugador, int victorias, int empates, int derrotas) throws SQLException {
+    private void actualizarEstadistica(PoolConexiones.Conexion conn, int jugador, int victorias, int empates, int derrotas) throws SQLException {
         int puntos = (victorias * 2) + empates;
         String sql = "UPDATE estadisticas_gato SET victorias = victorias + ?, empates = empates + ?, " +
-                     "derrotas = derrotas + ?, puntos = puntos + ? WHERE jugador = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, victorias);
-            pstmt.setInt(2, empates);
-            pstmt.setInt(3, derrotas);
-            pstmt.setInt(4, puntos);
-            pstmt.setString(5, jugador);
-            pstmt.executeUpdate();
-        }
+                     "derrotas = derrotas + ?, puntos = puntos + ? WHERE jugador_id = ?";
+        PreparedStatement pstmt = conn.preparar(sql);
+        pstmt.setInt(1, victorias);
+        pstmt.setInt(2, empates);
+        pstmt.setInt(3, derrotas);
+        pstmt.setInt(4, puntos);
+        pstmt.setInt(5, jugador);
+        pstmt.executeUpdate();
     }
     
     public List<String> obtenerRankingGeneral() {
         List<String> ranking = new ArrayList<>();
-        String sql = "SELECT jugador, victorias, empates, derrotas, puntos, " +
-                     "(victorias + empates + derrotas) as partidas_totales " +
-                     "FROM estadisticas_gato WHERE partidas_totales > 0 " +
-                     "ORDER BY puntos DESC, victorias DESC, jugador ASC";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        String sql = "SELECT u.nombre as jugador, e.victorias, e.empates, e.derrotas, e.puntos, " +
+                     "(e.victorias + e.empates + e.derrotas) as partidas_totales " +
+                     "FROM estadisticas_gato e JOIN usuarios u ON u.id = e.jugador_id " +
+                     "WHERE partidas_totales > 0 " +
+                     "ORDER BY e.puntos DESC, e.victorias DESC, u.nombre ASC";
+        
+        try (PoolConexiones.Conexion conn = pool.tomar();
+             ResultSet rs = conn.preparar(sql).executeQuery()) {
             
             int posicion = 1;
             while (rs.next()) {
@@ -580,31 +518,31 @@ public class BaseDatos {
         return ranking;
     }
     
-    public EstadisticasEnfrentamiento obtenerEstadisticasEnfrentamiento(String jugador1, String jugador2) {
+    public EstadisticasEnfrentamiento obtenerEstadisticasEnfrentamiento(int jugador1, int jugador2) {
         EstadisticasEnfrentamiento stats = new EstadisticasEnfrentamiento();
-        stats.jugador1 = jugador1;
-        stats.jugador2 = jugador2;
-        
-        String sql = "SELECT ganador FROM historial_partidas " +
-                     "WHERE (jugador1 = ? AND jugador2 = ?) OR (jugador1 = ? AND jugador2 = ?)";
-        
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, jugador1);
-            pstmt.setString(2, jugador2);
-            pstmt.setString(3, jugador2);
-            pstmt.setString(4, jugador1);
-            
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                String ganador = rs.getString("ganador");
-                if ("EMPATE".equals(ganador)) {
-                    stats.empates++;
-                } else if (jugador1.equals(ganador)) {
-                    stats.victoriasJ1++;
-                } else if (jugador2.equals(ganador)) {
-                    stats.victoriasJ2++;
+        stats.idJugador1 = jugador1;
+        stats.idJugador2 = jugador2;
+        
+        String sql = "SELECT ganador_id FROM historial_partidas " +
+                     "WHERE (jugador1_id = ? AND jugador2_id = ?) OR (jugador1_id = ? AND jugador2_id = ?)";
+        
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            PreparedStatement pstmt = conn.preparar(sql);
+            pstmt.setInt(1, jugador1);
+            pstmt.setInt(2, jugador2);
+            pstmt.setInt(3, jugador2);
+            pstmt.setInt(4, jugador1);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int ganador = rs.getInt("ganador_id");
+                    if (rs.wasNull()) {
+                        stats.empates++;
+                    } else if (ganador == jugador1) {
+                        stats.victoriasJ1++;
+                    } else if (ganador == jugador2) {
+                        stats.victoriasJ2++;
+                    }
                 }
             }
             
@@ -616,71 +554,37 @@ public class BaseDatos {
         return stats;
     }
     
-    public synchronized boolean bloquearUsuario(String usuarioActual, String usuarioABloquear) {
-        if (estaBloqueado(usuarioActual, usuarioABloquear)) {
-            return false;
-        }
-        
-        String sql = "INSERT INTO bloqueados (usuario_que_bloquea, usuario_bloqueado) VALUES (?, ?)";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, usuarioActual);
-            pstmt.setString(2, usuarioABloquear);
-            pstmt.executeUpdate();
-            System.out.println(usuarioActual + " bloqueó a " + usuarioABloquear);
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error bloqueando usuario: " + e.getMessage());
-            return false;
-        }
-    }
-    
-    public synchronized boolean desbloquearUsuario(String usuarioActual, String usuarioADesbloquear) {
-        if (!estaBloqueado(usuarioActual, usuarioADesbloquear)) {
-            return false;
-        }
-        
-        String sql = "DELETE FROM bloqueados WHERE usuario_que_bloquea = ? AND usuario_bloqueado = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, usuarioActual);
-            pstmt.setString(2, usuarioADesbloquear);
-            pstmt.executeUpdate();
-            System.out.println(usuarioActual + " desbloqueó a " + usuarioADesbloquear);
-            return true;
-        } catch (SQLException e) {
-            System.err.println("Error desbloqueando usuario: " + e.getMessage());
-            return false;
-        }
+    public boolean bloquearUsuario(int usuarioActual, int usuarioABloquear) {
+        String sql = "INSERT OR IGNORE INTO bloqueados (usuario_id, bloqueado_id) VALUES (?, ?)";
+        return esperar(escritor.enviar(conn -> {
+            PreparedStatement pstmt = conn.preparar(sql);
+            pstmt.setInt(1, usuarioActual);
+            pstmt.setInt(2, usuarioABloquear);
+            return pstmt.executeUpdate() > 0;
+        }), "Error bloqueando usuario", false);
     }
     
-    public boolean estaBloqueado(String usuarioOrigen, String usuarioDestino) {
-        String sql = "SELECT COUNT(*) FROM bloqueados WHERE usuario_que_bloquea = ? AND usuario_bloqueado = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, usuarioOrigen);
-            pstmt.setString(2, usuarioDestino);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-        } catch (SQLException e) {
-            System.err.println("Error verificando bloqueo: " + e.getMessage());
-        }
-        return false;
+    public boolean desbloquearUsuario(int usuarioActual, int usuarioADesbloquear) {
+        String sql = "DELETE FROM bloqueados WHERE usuario_id = ? AND bloqueado_id = ?";
+        return esperar(escritor.enviar(conn -> {
+            PreparedStatement pstmt = conn.preparar(sql);
+            pstmt.setInt(1, usuarioActual);
+            pstmt.setInt(2, usuarioADesbloquear);
+            return pstmt.executeUpdate() > 0;
+        }), "Error desbloqueando usuario", false);
     }
     
-    public List<String> obtenerBloqueados(String usuario) {
+    public List<String> obtenerBloqueados(int usuario) {
         List<String> bloqueados = new ArrayList<>();
-        String sql = "SELECT usuario_bloqueado FROM bloqueados WHERE usuario_que_bloquea = ? ORDER BY fecha_bloqueo DESC";
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, usuario);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                bloqueados.add(rs.getString("usuario_bloqueado"));
+        String sql = "SELECT u.nombre FROM bloqueados b JOIN usuarios u ON u.id = b.bloqueado_id " +
+                     "WHERE b.usuario_id = ? ORDER BY b.fecha_bloqueo DESC";
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            PreparedStatement pstmt = conn.preparar(sql);
+            pstmt.setInt(1, usuario);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    bloqueados.add(rs.getString("nombre"));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error obteniendo bloqueados: " + e.getMessage());
@@ -690,9 +594,21 @@ public class BaseDatos {
     
     // ==================== CLASES INTERNAS ====================
     
+    public static class Usuario {
+        public final int id;
+        public final String nombre;
+        public final String password;
+        
+        public Usuario(int id, String nombre, String password) {
+            this.id = id;
+            this.nombre = nombre;
+            this.password = password;
+        }
+    }
+    
     public static class EstadisticasEnfrentamiento {
-        public String jugador1;
-        public String jugador2;
+        public int idJugador1;
+        public int idJugador2;
         public int victoriasJ1;
         public int victoriasJ2;
         public int empates;
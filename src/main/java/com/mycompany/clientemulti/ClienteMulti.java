@@ -1,15 +1,26 @@
 package clientemulti;
  
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
  
 public class ClienteMulti {
+    static final String COMPRESION = "@@compresion";
+    static final String COMPRESION_OK = "@@compresion ok";
+    static final String PING = "@@ping";
+    static final String PONG = "@@pong";
  
     public static void main(String[] args) {
         Socket s = null;
         try {
             s = new Socket("localhost", 8080);
  
+            if (Boolean.getBoolean("chat.compresion")) {
+                DataOutputStream salida = new DataOutputStream(s.getOutputStream());
+                salida.writeUTF(COMPRESION);
+                salida.flush();
+            }
+ 
             Thread hiloParaMandar = new Thread(new ParaMandar(s), "sender");
             Thread hiloParaRecibir = new Thread(new ParaRecibir(s), "receiver");
  
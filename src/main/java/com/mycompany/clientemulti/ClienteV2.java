@@ -0,0 +1,130 @@
+package clientemulti;
+
+import com.mycompany.servidormulti.ProtocoloV2;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Cliente del protocolo v2 para bots: cada enviar() numera la solicitud y regresa en seguida
+// con un futuro que se completa con las líneas de su respuesta cuando llega el FIN. Se pueden
+// mandar muchas seguidas sin esperar; el servidor las atiende en orden.
+public class ClienteV2 implements Closeable {
+    private final Socket socket;
+    private final DataOutputStream salida;
+    private final DataInputStream entrada;
+    private final ReentrantLock cerrojoEscritura = new ReentrantLock();
+    private final ConcurrentHashMap<Integer, Pendiente> pendientes = new ConcurrentHashMap<>();
+    private final Consumer<String> avisos;
+    private int siguienteId = 1;
+
+    // Los avisos (mensajes de otros, invitaciones, jugadas del oponente) llegan con id 0.
+    public ClienteV2(String host, int puerto, Consumer<String> avisos) throws IOException {
+        this.socket = new Socket(host, puerto);
+        this.socket.setTcpNoDelay(true);
+        this.avisos = avisos;
+        this.salida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        salida.writeUTF(ProtocoloV2.SALUDO);
+        salida.flush();
+        String linea;
+        while (!(linea = entrada.readUTF()).equals(ProtocoloV2.SALUDO_OK)) {
+            avisos.accept(linea);
+        }
+
+        Thread lector = new Thread(this::leer, "receiver-v2");
+        lector.setDaemon(true);
+        lector.start();
+    }
+
+    public CompletableFuture<List<String>> enviar(int codigo, Object... campos) throws IOException {
+        return enviar(true, codigo, campos);
+    }
+
+    // Con vaciar=false la solicitud queda en el búfer hasta la siguiente que sí lo vacíe,
+    // así una ráfaga sale en una sola escritura.
+    public CompletableFuture<List<String>> enviar(boolean vaciar, int codigo, Object... campos) throws IOException {
+        cerrojoEscritura.lock();
+        try {
+            int id = siguienteId++;
+            if (siguienteId == 0) siguienteId = 1;
+            Pendiente pendiente = new Pendiente();
+            pendientes.put(id, pendiente);
+            salida.write(ProtocoloV2.codificar(codigo, id, campos));
+            if (vaciar) salida.flush();
+            return pendiente.futuro;
+        } finally {
+            cerrojoEscritura.unlock();
+        }
+    }
+
+    public void vaciar() throws IOException {
+        cerrojoEscritura.lock();
+        try {
+            salida.flush();
+        } finally {
+            cerrojoEscritura.unlock();
+        }
+    }
+
+    private void responderPing() throws IOException {
+        cerrojoEscritura.lock();
+        try {
+            salida.write(ProtocoloV2.codificar(ProtocoloV2.PONG, 0));
+            salida.flush();
+        } finally {
+            cerrojoEscritura.unlock();
+        }
+    }
+
+    private void leer() {
+        try {
+            while (true) {
+                int longitud = entrada.readInt();
+                int codigo = entrada.readUnsignedByte();
+                int id = entrada.readInt();
+                byte[] campos = new byte[longitud - ProtocoloV2.CABECERA];
+                entrada.readFully(campos);
+
+                if (codigo == ProtocoloV2.LINEA) {
+                    String linea = new DataInputStream(new ByteArrayInputStream(campos)).readUTF();
+                    Pendiente pendiente = id == 0 ? null : pendientes.get(id);
+                    if (pendiente != null) {
+                        pendiente.lineas.add(linea);
+                    } else {
+                        avisos.accept(linea);
+                    }
+                } else if (codigo == ProtocoloV2.FIN) {
+                    Pendiente pendiente = pendientes.remove(id);
+                    if (pendiente != null) pendiente.futuro.complete(pendiente.lineas);
+                } else if (codigo == ProtocoloV2.PING) {
+                    responderPing();
+                }
+            }
+        } catch (IOException e) {
+            pendientes.values().forEach(p -> p.futuro.completeExceptionally(e));
+            pendientes.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private static class Pendiente {
+        final List<String> lineas = new ArrayList<>();
+        final CompletableFuture<List<String>> futuro = new CompletableFuture<>();
+    }
+}
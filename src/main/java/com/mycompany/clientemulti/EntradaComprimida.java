@@ -0,0 +1,86 @@
+package clientemulti;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Lee los bloques [u8 tipo][u32 longitud][datos] que manda el servidor después de
+// "@@compresion ok" y entrega los bytes originales. Un solo Inflater para toda la conexión,
+// igual que el Deflater del otro lado.
+public class EntradaComprimida extends InputStream {
+    private static final int SIN_COMPRIMIR = 0;
+    private static final int COMPRIMIDO = 1;
+
+    private final DataInputStream origen;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] trozo = new byte[4096];
+    private byte[] bloque = new byte[0];
+    private int posicion;
+
+    public EntradaComprimida(InputStream origen) {
+        this.origen = new DataInputStream(origen);
+    }
+
+    private boolean cargarBloque() throws IOException {
+        while (posicion >= bloque.length) {
+            int tipo = origen.read();
+            if (tipo < 0) return false;
+
+            byte[] datos = new byte[origen.readInt()];
+            origen.readFully(datos);
+            if (tipo == SIN_COMPRIMIR) {
+                bloque = datos;
+            } else if (tipo == COMPRIMIDO) {
+                bloque = descomprimir(datos);
+            } else {
+                throw new IOException("Bloque desconocido: " + tipo);
+            }
+            posicion = 0;
+        }
+        return true;
+    }
+
+    private byte[] descomprimir(byte[] datos) throws IOException {
+        inflater.setInput(datos);
+        ByteArrayOutputStream resultado = new ByteArrayOutputStream(datos.length * 4);
+        try {
+            while (true) {
+                int n = inflater.inflate(trozo);
+                if (n == 0) {
+                    if (inflater.needsInput()) break;
+                    if (inflater.finished() || inflater.needsDictionary()) throw new EOFException("Flujo comprimido terminado");
+                }
+                resultado.write(trozo, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque comprimido inválido", e);
+        }
+        return resultado.toByteArray();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!cargarBloque()) return -1;
+        return bloque[posicion++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!cargarBloque()) return -1;
+        int n = Math.min(len, bloque.length - posicion);
+        System.arraycopy(bloque, posicion, b, off, n);
+        posicion += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        origen.close();
+    }
+}
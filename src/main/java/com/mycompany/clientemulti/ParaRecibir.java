@@ -1,27 +1,40 @@
-package clientemulti;
- 
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.net.Socket;
- 
-public class ParaRecibir implements Runnable {
-    private final DataInputStream entrada;
- 
-    public ParaRecibir(Socket s) throws IOException {
-        this.entrada = new DataInputStream(s.getInputStream());
-    }
- 
-    @Override
-    public void run() {
-        try {
-            while (true) {
-                String mensaje = entrada.readUTF();
-                System.out.println(mensaje);
-            }
-        } catch (IOException e) {
-            System.out.println("Conexión cerrada.");
-        } finally {
-            try { entrada.close(); } catch (IOException ignored) {}
-        }
-    }
+package clientemulti;
+ 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+ 
+public class ParaRecibir implements Runnable {
+    private DataInputStream entrada;
+    private final DataOutputStream salida;
+ 
+    public ParaRecibir(Socket s) throws IOException {
+        this.entrada = new DataInputStream(s.getInputStream());
+        this.salida = new DataOutputStream(s.getOutputStream());
+    }
+ 
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                String mensaje = entrada.readUTF();
+                if (mensaje.equals(ClienteMulti.COMPRESION_OK)) {
+                    // DataInputStream no lee por adelantado: lo que sigue ya son bloques comprimidos.
+                    entrada = new DataInputStream(new EntradaComprimida(entrada));
+                    continue;
+                }
+                if (mensaje.equals(ClienteMulti.PING)) {
+                    // writeUTF manda la trama en una sola escritura y no se mezcla con ParaMandar.
+                    salida.writeUTF(ClienteMulti.PONG);
+                    continue;
+                }
+                System.out.println(mensaje);
+            }
+        } catch (IOException e) {
+            System.out.println("Conexión cerrada.");
+        } finally {
+            try { entrada.close(); } catch (IOException ignored) {}
+        }
+    }
 }
\ No newline at end of file
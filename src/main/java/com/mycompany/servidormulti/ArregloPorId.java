@@ -0,0 +1,60 @@
+package com.mycompany.servidormulti;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Arreglo indexado por id de usuario. Los ids son densos (1, 2, 3...), así que buscar es leer
+// una casilla, sin hash ni equals. Va por segmentos de tamaño fijo que se crean al primer uso
+// y nunca se mueven: por eso las operaciones atómicas (ponerSiAusente, reemplazar, quitar)
+// son seguras sin cerrojos aunque el arreglo siga creciendo.
+public final class ArregloPorId<T> {
+    private static final int BITS_SEGMENTO = 10;
+    private static final int TAMANO_SEGMENTO = 1 << BITS_SEGMENTO;
+    private static final int MASCARA = TAMANO_SEGMENTO - 1;
+    private static final int MAX_SEGMENTOS = 1 << 12;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> segmentos = new AtomicReferenceArray<>(MAX_SEGMENTOS);
+
+    public T obtener(int id) {
+        AtomicReferenceArray<T> segmento = segmentoExistente(id);
+        return segmento == null ? null : segmento.get(id & MASCARA);
+    }
+
+    public void poner(int id, T valor) {
+        segmento(id).set(id & MASCARA, valor);
+    }
+
+    // Regresa el valor anterior; si no era null no se cambió nada.
+    public T ponerSiAusente(int id, T valor) {
+        AtomicReferenceArray<T> segmento = segmento(id);
+        int i = id & MASCARA;
+        while (true) {
+            T anterior = segmento.get(i);
+            if (anterior != null) return anterior;
+            if (segmento.compareAndSet(i, null, valor)) return null;
+        }
+    }
+
+    public boolean reemplazar(int id, T esperado, T nuevo) {
+        return segmento(id).compareAndSet(id & MASCARA, esperado, nuevo);
+    }
+
+    // Solo quita la casilla si todavía tiene ese valor.
+    public boolean quitar(int id, T esperado) {
+        AtomicReferenceArray<T> segmento = segmentoExistente(id);
+        return segmento != null && segmento.compareAndSet(id & MASCARA, esperado, null);
+    }
+
+    private AtomicReferenceArray<T> segmentoExistente(int id) {
+        int s = id >>> BITS_SEGMENTO;
+        return s < MAX_SEGMENTOS ? segmentos.get(s) : null;
+    }
+
+    private AtomicReferenceArray<T> segmento(int id) {
+        int s = id >>> BITS_SEGMENTO;
+        if (id <= 0 || s >= MAX_SEGMENTOS) throw new IllegalArgumentException("Id de usuario fuera de rango: " + id);
+        AtomicReferenceArray<T> segmento = segmentos.get(s);
+        if (segmento != null) return segmento;
+        segmentos.compareAndSet(s, null, new AtomicReferenceArray<>(TAMANO_SEGMENTO));
+        return segmentos.get(s);
+    }
+}
@@ -0,0 +1,122 @@
+package com.mycompany.servidormulti;
+
+import java.io.IOException;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+// Un hilo con su propio Selector que atiende la lectura y escritura de muchas conexiones.
+public class BucleEventos implements Runnable {
+    private final Selector selector;
+    private final ServidorMulti servidor;
+    private final Executor trabajadores;
+    private final Queue<ConexionNIO> porRegistrar = new ConcurrentLinkedQueue<>();
+    private final Queue<ConexionNIO> conEscrituras = new ConcurrentLinkedQueue<>();
+    private volatile boolean activo = true;
+
+    public BucleEventos(ServidorMulti servidor, Executor trabajadores) throws IOException {
+        this.selector = Selector.open();
+        this.servidor = servidor;
+        this.trabajadores = trabajadores;
+    }
+
+    public void registrar(SocketChannel canal) throws IOException {
+        canal.configureBlocking(false);
+        porRegistrar.add(new ConexionNIO(servidor, canal, this, trabajadores));
+        selector.wakeup();
+    }
+
+    void solicitarEscritura(ConexionNIO conexion) {
+        conEscrituras.add(conexion);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (activo) {
+            try {
+                selector.select();
+                registrarPendientes();
+                atenderEscrituras();
+                atenderListas();
+            } catch (IOException e) {
+                System.err.println("Error en bucle de eventos: " + e.getMessage());
+            }
+        }
+        cerrar();
+    }
+
+    // Al detenerse cierra los canales que quedaban (registrados o por registrar) y el selector,
+    // así una instancia detenida no deja descriptores abiertos.
+    private void cerrar() {
+        for (SelectionKey clave : selector.keys()) {
+            cerrarSinAvisar(clave.channel());
+        }
+        ConexionNIO conexion;
+        while ((conexion = porRegistrar.poll()) != null) {
+            cerrarSinAvisar(conexion.getCanal());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error cerrando selector: " + e.getMessage());
+        }
+    }
+
+    private static void cerrarSinAvisar(Channel canal) {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // Se descarta de todas formas.
+        }
+    }
+
+    private void registrarPendientes() {
+        ConexionNIO conexion;
+        while ((conexion = porRegistrar.poll()) != null) {
+            try {
+                SelectionKey clave = conexion.getCanal().register(selector, SelectionKey.OP_READ, conexion);
+                conexion.setClave(clave);
+                conexion.iniciar();
+            } catch (ClosedChannelException e) {
+                conexion.close();
+            }
+        }
+    }
+
+    private void atenderEscrituras() {
+        ConexionNIO conexion;
+        while ((conexion = conEscrituras.poll()) != null) {
+            if (conexion.getClave() != null && conexion.getClave().isValid()) {
+                conexion.escribirPendientes();
+            }
+        }
+    }
+
+    private void atenderListas() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey clave = it.next();
+            it.remove();
+            ConexionNIO conexion = (ConexionNIO) clave.attachment();
+
+            if (clave.isValid() && clave.isWritable()) {
+                conexion.escribirPendientes();
+            }
+            if (clave.isValid() && clave.isReadable()) {
+                conexion.leer();
+            }
+        }
+    }
+
+    public void detener() {
+        activo = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,232 @@
+package com.mycompany.servidormulti;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cola acotada de tramas pendientes de enviar a un cliente. Quien envía solo encola; un
+// EscritorSalida (modo bloqueante) o el BucleEventos (modo NIO) la vacía hacia el socket,
+// así un receptor lento no frena a quien le escribe.
+public class ColaSalida implements Closeable {
+    public enum PoliticaDesborde { DESCARTAR_ANTIGUO, DESCARTAR_NUEVO, DESCONECTAR }
+
+    private static final int CAPACIDAD = Integer.getInteger("chat.salida.capacidad", 1024);
+    private static final PoliticaDesborde POLITICA = PoliticaDesborde.valueOf(
+            System.getProperty("chat.salida.politica", "DESCONECTAR").toUpperCase());
+
+    private static final LongAdder PROFUNDIDAD_TOTAL = Metricas.contador("salida.profundidad");
+    private static final LongAdder DESCARTADAS = Metricas.contador("salida.tramas_descartadas");
+    private static final LongAdder DESCONEXIONES = Metricas.contador("salida.desconexiones_por_lentitud");
+
+    // Marca en la cola el punto desde el que se comprime; no es una trama ni cuenta como tal.
+    private static final ByteBuffer MARCA_COMPRESION = ByteBuffer.allocate(0);
+
+    private final ArrayDeque<ByteBuffer> tramas = new ArrayDeque<>();
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Condition hayTramas = cerrojo.newCondition();
+    private final int capacidad;
+    private final PoliticaDesborde politica;
+    private final Runnable alDesconectar;
+    private volatile Runnable alEncolar;
+    private boolean cerrada;
+    private long descartadas;
+    private CompresorSalida compresor;
+
+    public ColaSalida(int capacidad, PoliticaDesborde politica, Runnable alDesconectar) {
+        this.capacidad = capacidad;
+        this.politica = politica;
+        this.alDesconectar = alDesconectar;
+    }
+
+    public static ColaSalida nueva(Runnable alDesconectar) {
+        return new ColaSalida(CAPACIDAD, POLITICA, alDesconectar);
+    }
+
+    void setAlEncolar(Runnable alEncolar) {
+        this.alEncolar = alEncolar;
+    }
+
+    public boolean encolar(ByteBuffer trama) {
+        boolean desconectar = false;
+        cerrojo.lock();
+        try {
+            if (cerrada) return false;
+
+            if (tramas.size() >= capacidad) {
+                switch (politica) {
+                    case DESCARTAR_NUEVO:
+                        registrarDescarte();
+                        return false;
+                    case DESCARTAR_ANTIGUO:
+                        descartarMasAntigua();
+                        break;
+                    case DESCONECTAR:
+                        desconectar = true;
+                        descartarTodo();
+                        break;
+                }
+            }
+
+            if (!desconectar) {
+                tramas.add(trama);
+                PROFUNDIDAD_TOTAL.increment();
+                hayTramas.signal();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+
+        if (desconectar) {
+            DESCONEXIONES.increment();
+            alDesconectar.run();
+            return false;
+        }
+
+        Runnable aviso = alEncolar;
+        if (aviso != null) aviso.run();
+        return true;
+    }
+
+    private void descartarTodo() {
+        cerrada = true;
+        PROFUNDIDAD_TOTAL.add(-(tramas.size() - (tramas.contains(MARCA_COMPRESION) ? 1 : 0)));
+        tramas.clear();
+        hayTramas.signalAll();
+    }
+
+    // Cierre inmediato: descarta lo pendiente y corta la conexión sin esperar a vaciarla.
+    public void desconectar() {
+        cerrojo.lock();
+        try {
+            descartarTodo();
+        } finally {
+            cerrojo.unlock();
+        }
+        alDesconectar.run();
+    }
+
+    private void descartarMasAntigua() {
+        ByteBuffer antigua = tramas.poll();
+        if (antigua == MARCA_COMPRESION) {
+            tramas.poll();
+            tramas.addFirst(MARCA_COMPRESION);
+        }
+        PROFUNDIDAD_TOTAL.decrement();
+        registrarDescarte();
+    }
+
+    // Lo que se encole desde ahora sale comprimido; lo anterior (la confirmación incluida) no.
+    void activarCompresion() {
+        cerrojo.lock();
+        try {
+            if (!cerrada) tramas.add(MARCA_COMPRESION);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private void registrarDescarte() {
+        descartadas++;
+        DESCARTADAS.increment();
+    }
+
+    // Espera la siguiente trama; devuelve null cuando la cola está cerrada y vacía.
+    public ByteBuffer tomar() throws InterruptedException {
+        ByteBuffer trama;
+        cerrojo.lock();
+        try {
+            while ((trama = sacarConCerrojo()) == null && !cerrada) {
+                hayTramas.await();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+        return empaquetar(trama);
+    }
+
+    public ByteBuffer sacar() {
+        ByteBuffer trama;
+        cerrojo.lock();
+        try {
+            trama = sacarConCerrojo();
+        } finally {
+            cerrojo.unlock();
+        }
+        return empaquetar(trama);
+    }
+
+    private ByteBuffer sacarConCerrojo() {
+        ByteBuffer trama = tramas.poll();
+        while (trama == MARCA_COMPRESION) {
+            if (compresor == null) compresor = new CompresorSalida();
+            trama = tramas.poll();
+        }
+        if (trama != null) PROFUNDIDAD_TOTAL.decrement();
+        return trama;
+    }
+
+    // Fuera del cerrojo: solo el hilo que vacía la cola toca el compresor.
+    private ByteBuffer empaquetar(ByteBuffer trama) {
+        if (compresor == null) return trama;
+        if (trama != null) return compresor.empaquetar(trama);
+        if (estaCerrada() && estaVacia()) {
+            compresor.liberar();
+            compresor = null;
+        }
+        return null;
+    }
+
+    public boolean estaVacia() {
+        cerrojo.lock();
+        try {
+            return tramas.isEmpty();
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public boolean estaCerrada() {
+        cerrojo.lock();
+        try {
+            return cerrada;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public int getProfundidad() {
+        cerrojo.lock();
+        try {
+            return tramas.size();
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public long getDescartadas() {
+        cerrojo.lock();
+        try {
+            return descartadas;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // Cierre ordenado: no acepta más tramas, pero las ya encoladas se terminan de enviar.
+    @Override
+    public void close() {
+        cerrojo.lock();
+        try {
+            cerrada = true;
+            hayTramas.signalAll();
+        } finally {
+            cerrojo.unlock();
+        }
+
+        Runnable aviso = alEncolar;
+        if (aviso != null) aviso.run();
+    }
+}
@@ -0,0 +1,68 @@
+package com.mycompany.servidormulti;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+// Compresión opcional de lo que sale hacia un cliente. El cliente la pide con SOLICITUD y,
+// después de CONFIRMACION, cada bloque de su ColaSalida (la respuesta de un comando o una
+// difusión) viaja como
+//   [u8 tipo][u32 longitud][datos]
+// Los bloques menores que el umbral van SIN_COMPRIMIR; el resto pasa por un Deflater que dura
+// toda la conexión y se vacía con SYNC_FLUSH al final de cada bloque, así el cliente puede
+// descomprimir cada respuesta al llegar y el diccionario se aprovecha de un bloque al siguiente.
+// Solo lo usa quien vacía la cola.
+public class CompresorSalida {
+    public static final String SOLICITUD = "@@compresion";
+    public static final String CONFIRMACION = "@@compresion ok";
+    public static final int SIN_COMPRIMIR = 0;
+    public static final int COMPRIMIDO = 1;
+    public static final int CABECERA = 1 + 4;
+
+    private static final int UMBRAL = Integer.getInteger("chat.compresion.umbral", 256);
+    private static final int NIVEL = Integer.getInteger("chat.compresion.nivel", Deflater.DEFAULT_COMPRESSION);
+
+    private static final LongAdder BYTES_ORIGINALES = Metricas.contador("compresion.bytes_originales");
+    private static final LongAdder BYTES_ENVIADOS = Metricas.contador("compresion.bytes_enviados");
+    private static final LongAdder BLOQUES_SIN_COMPRIMIR = Metricas.contador("compresion.bloques_sin_comprimir");
+
+    private final Deflater deflater = new Deflater(NIVEL, true);
+    private byte[] destino = new byte[1024];
+
+    public ByteBuffer empaquetar(ByteBuffer bloque) {
+        int longitud = bloque.remaining();
+        BYTES_ORIGINALES.add(longitud);
+
+        if (longitud < UMBRAL) {
+            BLOQUES_SIN_COMPRIMIR.increment();
+            ByteBuffer paquete = ByteBuffer.allocate(CABECERA + longitud);
+            paquete.put((byte) SIN_COMPRIMIR).putInt(longitud).put(bloque.duplicate()).flip();
+            BYTES_ENVIADOS.add(paquete.remaining());
+            return paquete;
+        }
+
+        deflater.setInput(bloque.duplicate());
+        int escritos = CABECERA;
+        while (true) {
+            int espacio = destino.length - escritos;
+            escritos += deflater.deflate(destino, escritos, espacio, Deflater.SYNC_FLUSH);
+            // Si sobró espacio, el SYNC_FLUSH ya sacó todo lo pendiente.
+            if (escritos < destino.length) break;
+            destino = Arrays.copyOf(destino, destino.length * 2);
+        }
+
+        destino[0] = (byte) COMPRIMIDO;
+        int datos = escritos - CABECERA;
+        destino[1] = (byte) (datos >>> 24);
+        destino[2] = (byte) (datos >>> 16);
+        destino[3] = (byte) (datos >>> 8);
+        destino[4] = (byte) datos;
+        BYTES_ENVIADOS.add(escritos);
+        return ByteBuffer.wrap(Arrays.copyOf(destino, escritos));
+    }
+
+    public void liberar() {
+        deflater.end();
+    }
+}
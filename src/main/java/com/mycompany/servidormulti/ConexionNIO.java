@@ -0,0 +1,284 @@
+package com.mycompany.servidormulti;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Estado de una conexión atendida por un BucleEventos: decodifica las tramas writeUTF
+// (2 bytes de longitud + datos) a medida que llegan y las entrega a su UnCliente en un
+// hilo de trabajo, de una en una y en orden.
+public class ConexionNIO implements Closeable {
+    private static final int TAMANO_LECTURA = 8192;
+    private static final byte[] FIN_DE_FLUJO = new byte[0];
+
+    private final SocketChannel canal;
+    private final BucleEventos bucle;
+    private final Executor trabajadores;
+    private final UnCliente cliente;
+    private final EntradaCanal entrada;
+    private final ColaSalida cola;
+    private final AtomicBoolean programada = new AtomicBoolean(false);
+    private final AtomicBoolean escrituraSolicitada = new AtomicBoolean(false);
+    private ByteBuffer lectura = ByteBuffer.allocate(TAMANO_LECTURA);
+    private ByteBuffer enCurso;
+    private SelectionKey clave;
+    private volatile boolean cerrada;
+    private boolean iniciada;
+    private boolean primeraTrama = true;
+    private boolean protocoloV2;
+    private boolean finalizada;
+
+    ConexionNIO(ServidorMulti servidor, SocketChannel canal, BucleEventos bucle, Executor trabajadores) {
+        this.canal = canal;
+        this.bucle = bucle;
+        this.trabajadores = trabajadores;
+        this.entrada = new EntradaCanal();
+        this.cola = ColaSalida.nueva(this::abortar);
+        this.cola.setAlEncolar(this::solicitarEscritura);
+        this.cliente = UnCliente.crear(servidor, entrada, cola, this);
+    }
+
+    void setClave(SelectionKey clave) {
+        this.clave = clave;
+    }
+
+    SelectionKey getClave() {
+        return clave;
+    }
+
+    SocketChannel getCanal() {
+        return canal;
+    }
+
+    // Llamado desde el bucle cuando el canal tiene datos para leer.
+    void leer() {
+        try {
+            int leidos = canal.read(lectura);
+            if (leidos < 0) {
+                abortar();
+                return;
+            }
+            decodificarTramas();
+        } catch (IOException e) {
+            abortar();
+        }
+    }
+
+    // Si la primera trama es el saludo de ProtocoloV2, las siguientes llevan longitud de 4 bytes.
+    private void decodificarTramas() {
+        lectura.flip();
+        boolean hayNuevas = false;
+        int necesario = 0;
+
+        while (true) {
+            int prefijo = protocoloV2 ? 4 : 2;
+            if (lectura.remaining() < prefijo) break;
+
+            int posicion = lectura.position();
+            int longitud = protocoloV2 ? lectura.getInt(posicion) : lectura.getShort(posicion) & 0xFFFF;
+            if (protocoloV2 && (longitud < ProtocoloV2.CABECERA || longitud > ProtocoloV2.TAMANO_MAXIMO)) {
+                abortar();
+                return;
+            }
+            if (lectura.remaining() < prefijo + longitud) {
+                necesario = prefijo + longitud;
+                break;
+            }
+
+            byte[] trama = new byte[prefijo + longitud];
+            lectura.get(trama);
+            if (primeraTrama) {
+                primeraTrama = false;
+                protocoloV2 = Arrays.equals(trama, ProtocoloV2.TRAMA_SALUDO);
+            }
+            entrada.agregar(trama);
+            hayNuevas = true;
+        }
+
+        lectura.compact();
+        if (necesario > lectura.capacity()) {
+            ByteBuffer mayor = ByteBuffer.allocate(necesario);
+            lectura.flip();
+            mayor.put(lectura);
+            lectura = mayor;
+        }
+
+        if (hayNuevas) {
+            programar();
+        }
+    }
+
+    // Llamado desde el bucle: vacía la cola de salida mientras el canal acepte datos sin bloquear.
+    void escribirPendientes() {
+        escrituraSolicitada.set(false);
+        try {
+            while (true) {
+                if (enCurso == null) enCurso = cola.sacar();
+                if (enCurso == null) break;
+
+                canal.write(enCurso);
+                if (enCurso.hasRemaining()) {
+                    clave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                enCurso = null;
+            }
+            if (cola.estaCerrada()) {
+                abortar();
+            } else {
+                clave.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException | CancelledKeyException e) {
+            abortar();
+        }
+    }
+
+    private void solicitarEscritura() {
+        if (escrituraSolicitada.compareAndSet(false, true)) {
+            bucle.solicitarEscritura(this);
+        }
+    }
+
+    private void programar() {
+        if (programada.compareAndSet(false, true)) {
+            trabajadores.execute(this::atender);
+        }
+    }
+
+    // Se ejecuta en un hilo de trabajo; nunca hay dos atenciones simultáneas por conexión.
+    private void atender() {
+        try {
+            if (!iniciada) {
+                iniciada = true;
+                cliente.inicializarCliente();
+            }
+            while (!finalizada && hayEntrada()) {
+                cliente.procesarSiguienteMensaje();
+            }
+            if (cerrada && !finalizada && !hayEntrada()) {
+                finalizar();
+            }
+        } catch (IOException e) {
+            finalizar();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            finalizar();
+        } finally {
+            programada.set(false);
+            if (!finalizada && (hayEntrada() || cerrada)) {
+                programar();
+            }
+        }
+    }
+
+    // hayMasSolicitudes() puede haber pasado ya la siguiente trama al búfer de la sesión; esa
+    // también cuenta, o se quedaría ahí hasta que llegara otra.
+    private boolean hayEntrada() {
+        return entrada.hayTramas() || cliente.tieneEntradaLeida();
+    }
+
+    private void finalizar() {
+        if (finalizada) return;
+        finalizada = true;
+        System.out.println(cliente.getNombreCliente() + " se desconectó.");
+        cliente.manejarDesconexion();
+        close();
+    }
+
+    void iniciar() {
+        programar();
+    }
+
+    // El cliente se fue o no da abasto: se cierra sin esperar a vaciar la cola.
+    private void abortar() {
+        cerrarCanal();
+        entrada.cerrar();
+        programar();
+    }
+
+    private void cerrarCanal() {
+        cerrada = true;
+        cola.close();
+        if (clave != null) {
+            clave.cancel();
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Cierre pedido por UnCliente: el bucle cierra el canal después de enviar lo pendiente.
+    @Override
+    public void close() {
+        cola.close();
+    }
+
+    // Flujo de entrada alimentado por el bucle con tramas completas. En la práctica no bloquea:
+    // atender() solo lee si hay una trama completa, y los comandos interactivos dejan su
+    // pregunta como continuación (preguntar/tomarPendiente) en vez de esperar la siguiente línea.
+    private static class EntradaCanal extends InputStream {
+        private final LinkedBlockingQueue<byte[]> tramas = new LinkedBlockingQueue<>();
+        private byte[] actual;
+        private int posicion;
+
+        void agregar(byte[] trama) {
+            tramas.add(trama);
+        }
+
+        void cerrar() {
+            tramas.add(FIN_DE_FLUJO);
+        }
+
+        boolean hayTramas() {
+            return available() > 0;
+        }
+
+        // Solo cuenta tramas completas, así que quien lo consulta nunca se queda esperando.
+        @Override
+        public int available() {
+            if (actual != null && posicion < actual.length) return actual.length - posicion;
+            byte[] siguiente = tramas.peek();
+            return siguiente == null ? 0 : siguiente.length;
+        }
+
+        private boolean cargarTrama() throws IOException {
+            while (actual == null || posicion >= actual.length) {
+                if (actual == FIN_DE_FLUJO) return false;
+                try {
+                    actual = tramas.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Lectura interrumpida", e);
+                }
+                posicion = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!cargarTrama()) return -1;
+            return actual[posicion++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!cargarTrama()) return -1;
+            int n = Math.min(len, actual.length - posicion);
+            System.arraycopy(actual, posicion, b, off, n);
+            posicion += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.mycompany.servidormulti;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Conjunto de ids guardado como un int[] ordenado que se reemplaza entero en cada cambio.
+// Consultar es una búsqueda binaria sobre un arreglo que nadie modifica, sin cerrojos ni
+// cajas Integer. Sirve para conjuntos chicos que se leen mucho más de lo que cambian, como
+// los bloqueos de un usuario.
+public final class ConjuntoEnteros {
+    private static final int[] VACIO = new int[0];
+
+    private final AtomicReference<int[]> elementos = new AtomicReference<>(VACIO);
+
+    // Para cargar muchos de una vez sin copiar el arreglo por cada uno.
+    public static ConjuntoEnteros de(int[] valores) {
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        if (valores.length == 0) return conjunto;
+        int[] ordenados = valores.clone();
+        Arrays.sort(ordenados);
+        int total = 1;
+        for (int i = 1; i < ordenados.length; i++) {
+            if (ordenados[i] != ordenados[total - 1]) ordenados[total++] = ordenados[i];
+        }
+        conjunto.elementos.set(total == ordenados.length ? ordenados : Arrays.copyOf(ordenados, total));
+        return conjunto;
+    }
+
+    public boolean contiene(int valor) {
+        return Arrays.binarySearch(elementos.get(), valor) >= 0;
+    }
+
+    public boolean agregar(int valor) {
+        while (true) {
+            int[] actual = elementos.get();
+            int posicion = Arrays.binarySearch(actual, valor);
+            if (posicion >= 0) return false;
+
+            int insercion = -posicion - 1;
+            int[] nuevo = new int[actual.length + 1];
+            System.arraycopy(actual, 0, nuevo, 0, insercion);
+            nuevo[insercion] = valor;
+            System.arraycopy(actual, insercion, nuevo, insercion + 1, actual.length - insercion);
+            if (elementos.compareAndSet(actual, nuevo)) return true;
+        }
+    }
+
+    public boolean quitar(int valor) {
+        while (true) {
+            int[] actual = elementos.get();
+            int posicion = Arrays.binarySearch(actual, valor);
+            if (posicion < 0) return false;
+
+            int[] nuevo = actual.length == 1 ? VACIO : new int[actual.length - 1];
+            System.arraycopy(actual, 0, nuevo, 0, posicion);
+            System.arraycopy(actual, posicion + 1, nuevo, posicion, actual.length - posicion - 1);
+            if (elementos.compareAndSet(actual, nuevo)) return true;
+        }
+    }
+
+    // El arreglo que regresa no cambia nunca; no hay que copiarlo.
+    public int[] aArreglo() {
+        return elementos.get();
+    }
+
+    public int tamano() {
+        return elementos.get().length;
+    }
+}
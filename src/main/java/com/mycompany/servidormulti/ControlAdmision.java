@@ -0,0 +1,117 @@
+package com.mycompany.servidormulti;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Decide en el ciclo de accept si una conexión nueva entra, antes de crear hilos, colas o
+// tocar la base de datos: un tope de sesiones simultáneas y una cubeta de fichas por IP de
+// origen. Las rechazadas reciben una sola trama con el motivo y se cierran en el acto.
+// admitir() solo se llama desde el hilo que acepta; liberar() desde el de cada sesión.
+public class ControlAdmision {
+    public static final int BACKLOG = Integer.getInteger("chat.admision.backlog", 128);
+
+    private static final int MAX_SESIONES = Integer.getInteger("chat.admision.max", 10000);
+    private static final double FICHAS_POR_SEGUNDO = Double.parseDouble(System.getProperty("chat.admision.tasa", "5"));
+    private static final double RAFAGA = Double.parseDouble(System.getProperty("chat.admision.rafaga", "20"));
+    private static final long LIMPIEZA = TimeUnit.SECONDS.toNanos(60);
+
+    private static final byte[] TRAMA_LLENO = trama("[RECHAZADO]: El servidor está lleno, intenta más tarde.");
+    private static final byte[] TRAMA_TASA = trama("[RECHAZADO]: Demasiadas conexiones desde tu dirección, espera un momento.");
+
+    private static final LongAdder ACEPTADAS = Metricas.contador("admision.aceptadas");
+    private static final LongAdder RECHAZADAS_LLENO = Metricas.contador("admision.rechazadas.lleno");
+    private static final LongAdder RECHAZADAS_TASA = Metricas.contador("admision.rechazadas.tasa");
+
+    private final AtomicInteger sesiones = new AtomicInteger();
+    private final AtomicInteger saludosEnCurso = new AtomicInteger();
+    private final Map<InetAddress, Cubeta> cubetas = new HashMap<>();
+    private long ultimaLimpieza = System.nanoTime();
+
+    public ControlAdmision() {
+        Metricas.registrarIndicador("admision.sesiones", sesiones::get);
+        Metricas.registrarIndicador("admision.saludos_en_curso", saludosEnCurso::get);
+    }
+
+    private static byte[] trama(String texto) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeUTF(texto);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Devuelve null si la conexión entra, o la trama de rechazo que hay que mandarle.
+    public ByteBuffer admitir(InetAddress origen) {
+        long ahora = System.nanoTime();
+        limpiarCubetas(ahora);
+
+        Cubeta cubeta = cubetas.computeIfAbsent(origen, o -> new Cubeta(ahora));
+        if (!cubeta.tomar(ahora)) {
+            RECHAZADAS_TASA.increment();
+            return ByteBuffer.wrap(TRAMA_TASA);
+        }
+        if (sesiones.incrementAndGet() > MAX_SESIONES) {
+            sesiones.decrementAndGet();
+            RECHAZADAS_LLENO.increment();
+            return ByteBuffer.wrap(TRAMA_LLENO);
+        }
+
+        saludosEnCurso.incrementAndGet();
+        ACEPTADAS.increment();
+        return null;
+    }
+
+    // La sesión ya mandó la bienvenida y quedó registrada.
+    public void terminarSaludo() {
+        saludosEnCurso.decrementAndGet();
+    }
+
+    public void liberar(boolean saludoPendiente) {
+        if (saludoPendiente) saludosEnCurso.decrementAndGet();
+        sesiones.decrementAndGet();
+    }
+
+    // Las cubetas llenas no limitan a nadie, así que se pueden olvidar.
+    private void limpiarCubetas(long ahora) {
+        if (ahora - ultimaLimpieza < LIMPIEZA) return;
+        ultimaLimpieza = ahora;
+        cubetas.values().removeIf(cubeta -> cubeta.estaLlena(ahora));
+    }
+
+    private static class Cubeta {
+        private double fichas = RAFAGA;
+        private long ultimaRecarga;
+
+        Cubeta(long ahora) {
+            this.ultimaRecarga = ahora;
+        }
+
+        boolean tomar(long ahora) {
+            recargar(ahora);
+            if (fichas < 1) return false;
+            fichas--;
+            return true;
+        }
+
+        boolean estaLlena(long ahora) {
+            recargar(ahora);
+            return fichas >= RAFAGA;
+        }
+
+        private void recargar(long ahora) {
+            fichas = Math.min(RAFAGA, fichas + (ahora - ultimaRecarga) * FICHAS_POR_SEGUNDO / 1e9);
+            ultimaRecarga = ahora;
+        }
+    }
+}
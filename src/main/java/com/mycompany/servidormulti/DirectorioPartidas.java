@@ -0,0 +1,77 @@
+package com.mycompany.servidormulti;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Partida en curso de cada jugador, indexada por id de usuario: saber si alguien está jugando
+// o encontrar su partida es leer una casilla, no un recorrido de todas las partidas. Cada
+// jugador juega a lo más una partida a la vez. La partida también se deja en la sesión de
+// cada jugador (UnCliente.getPartidaActual) para que las difusiones lean un solo campo.
+public class DirectorioPartidas {
+    private final ArregloPorId<PartidaGato> porJugador = new ArregloPorId<>();
+    private final AtomicInteger jugadores = new AtomicInteger();
+    private final RegistroSesiones sesiones;
+
+    public DirectorioPartidas(RegistroSesiones sesiones) {
+        this.sesiones = sesiones;
+        Metricas.registrarIndicador("partidas.jugadores", jugadores::get);
+    }
+
+    // Reclama a los dos jugadores; si el segundo ya está en otra partida se suelta el primero.
+    public PartidaGato crear(UnCliente jugador1, UnCliente jugador2, boolean empiezaJ1) {
+        PartidaGato partida = new PartidaGato(jugador1.getIdUsuario(), jugador1.getNombreCliente(),
+            jugador2.getIdUsuario(), jugador2.getNombreCliente(), empiezaJ1);
+        if (!reclamar(partida.getIdJugador1(), partida)) return null;
+        if (!reclamar(partida.getIdJugador2(), partida)) {
+            soltar(partida.getIdJugador1(), partida);
+            return null;
+        }
+        asignarASesion(partida.getIdJugador1(), partida);
+        asignarASesion(partida.getIdJugador2(), partida);
+        return partida;
+    }
+
+    // Una partida ya terminada que siguiera en el índice no impide empezar otra.
+    private boolean reclamar(int jugador, PartidaGato partida) {
+        PartidaGato anterior = porJugador.ponerSiAusente(jugador, partida);
+        if (anterior == null) {
+            jugadores.incrementAndGet();
+            return true;
+        }
+        return anterior.isTerminado() && porJugador.reemplazar(jugador, anterior, partida);
+    }
+
+    private void soltar(int jugador, PartidaGato partida) {
+        if (porJugador.quitar(jugador, partida)) jugadores.decrementAndGet();
+    }
+
+    public PartidaGato obtener(int jugador) {
+        return jugador > 0 ? porJugador.obtener(jugador) : null;
+    }
+
+    public PartidaGato obtener(int jugador1, int jugador2) {
+        PartidaGato partida = obtener(jugador1);
+        return partida != null && partida.esJugadorEnPartida(jugador2) ? partida : null;
+    }
+
+    public boolean estaJugando(int jugador) {
+        PartidaGato partida = obtener(jugador);
+        return partida != null && !partida.isTerminado();
+    }
+
+    public void finalizar(PartidaGato partida) {
+        soltar(partida.getIdJugador1(), partida);
+        soltar(partida.getIdJugador2(), partida);
+        soltarDeSesion(partida.getIdJugador1(), partida);
+        soltarDeSesion(partida.getIdJugador2(), partida);
+    }
+
+    private void asignarASesion(int jugador, PartidaGato partida) {
+        UnCliente cliente = sesiones.obtener(jugador);
+        if (cliente != null) cliente.asignarPartida(partida);
+    }
+
+    private void soltarDeSesion(int jugador, PartidaGato partida) {
+        UnCliente cliente = sesiones.obtener(jugador);
+        if (cliente != null) cliente.soltarPartida(partida);
+    }
+}
@@ -0,0 +1,168 @@
+package com.mycompany.servidormulti;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Un solo hilo hace todas las escrituras de la base. Las toma de una cola y las confirma por
+// lotes: hasta LOTE_MAXIMO escrituras, o las que lleguen en ESPERA_LOTE_NS desde la primera,
+// van en una misma transacción, con un solo commit en lugar de uno por escritura.
+//
+// Cada escritura corre dentro de su propio savepoint: si falla se deshace solo ella y las demás
+// del lote siguen. El futuro de cada una se completa después del commit, así quien espera su
+// resultado (el id del mensaje, si se pudo bloquear) sabe que ya quedó guardado. Como todas
+// pasan por el mismo hilo y en orden de llegada, dos escrituras nunca se cruzan.
+public class EscritorBD implements AutoCloseable {
+    private static final int LOTE_MAXIMO = 256;
+    private static final long ESPERA_LOTE_NS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final LongAdder LOTES = Metricas.contador("bd.escritor.lotes");
+    private static final LongAdder ESCRITURAS = Metricas.contador("bd.escritor.escrituras");
+    private static final LongAdder FALLIDAS = Metricas.contador("bd.escritor.fallidas");
+
+    public interface Escritura<T> {
+        T aplicar(PoolConexiones.Conexion conn) throws SQLException;
+    }
+
+    private static final class Pendiente<T> {
+        final Escritura<T> escritura;
+        final CompletableFuture<T> resultado = new CompletableFuture<>();
+        T valor;
+        Throwable error;
+
+        Pendiente(Escritura<T> escritura) {
+            this.escritura = escritura;
+        }
+
+        void aplicar(PoolConexiones.Conexion conn) throws SQLException {
+            valor = escritura.aplicar(conn);
+        }
+
+        void completar() {
+            if (error == null) {
+                resultado.complete(valor);
+            } else {
+                resultado.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static final Pendiente<Void> FIN = new Pendiente<>(conn -> null);
+
+    private final PoolConexiones pool;
+    private final LinkedBlockingQueue<Pendiente<?>> cola = new LinkedBlockingQueue<>();
+    private final Thread hilo;
+    private volatile boolean terminado;
+
+    public EscritorBD(PoolConexiones pool) {
+        this.pool = pool;
+        this.hilo = new Thread(this::ejecutar, "escritor-bd");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+        Metricas.registrarIndicador("bd.escritor.pendientes", cola::size);
+    }
+
+    public <T> CompletableFuture<T> enviar(Escritura<T> escritura) {
+        Pendiente<T> pendiente = new Pendiente<>(escritura);
+        cola.add(pendiente);
+        // Si el hilo ya vació la cola para terminar, nadie más la va a atender.
+        if (terminado && cola.remove(pendiente)) {
+            pendiente.error = new SQLException("El escritor de la base está cerrado");
+            pendiente.completar();
+        }
+        return pendiente.resultado;
+    }
+
+    private void ejecutar() {
+        List<Pendiente<?>> lote = new ArrayList<>(LOTE_MAXIMO);
+        boolean fin = false;
+        while (!fin) {
+            try {
+                fin = juntarLote(lote);
+            } catch (InterruptedException e) {
+                fin = true;
+            }
+            if (!lote.isEmpty()) {
+                confirmar(lote);
+                lote.clear();
+            }
+        }
+        terminado = true;
+        Pendiente<?> restante;
+        while ((restante = cola.poll()) != null) {
+            restante.error = new SQLException("El escritor de la base está cerrado");
+            restante.completar();
+        }
+    }
+
+    // Regresa true si llegó FIN; lo que se juntó antes se confirma igual.
+    private boolean juntarLote(List<Pendiente<?>> lote) throws InterruptedException {
+        Pendiente<?> pendiente = cola.take();
+        if (pendiente == FIN) return true;
+        lote.add(pendiente);
+        long limite = System.nanoTime() + ESPERA_LOTE_NS;
+        while (lote.size() < LOTE_MAXIMO) {
+            long restante = limite - System.nanoTime();
+            pendiente = restante > 0 ? cola.poll(restante, TimeUnit.NANOSECONDS) : cola.poll();
+            if (pendiente == null) return false;
+            if (pendiente == FIN) return true;
+            lote.add(pendiente);
+        }
+        return false;
+    }
+
+    private void confirmar(List<Pendiente<?>> lote) {
+        try (PoolConexiones.Conexion conn = pool.tomar()) {
+            Connection jdbc = conn.jdbc();
+            conn.setAutoCommit(false);
+            for (Pendiente<?> pendiente : lote) {
+                Savepoint punto = jdbc.setSavepoint();
+                try {
+                    pendiente.aplicar(conn);
+                    jdbc.releaseSavepoint(punto);
+                } catch (SQLException | RuntimeException e) {
+                    jdbc.rollback(punto);
+                    jdbc.releaseSavepoint(punto);
+                    pendiente.error = e;
+                    FALLIDAS.increment();
+                }
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            // Sin commit no quedó nada: fallan todas, también las que habían salido bien.
+            System.err.println("Error confirmando lote de escrituras: " + e.getMessage());
+            for (Pendiente<?> pendiente : lote) {
+                pendiente.error = e;
+            }
+        }
+        LOTES.increment();
+        ESCRITURAS.add(lote.size());
+        for (Pendiente<?> pendiente : lote) {
+            pendiente.completar();
+        }
+    }
+
+    // Espera a que se confirme todo lo encolado hasta ahora, sin cerrar el escritor. Las
+    // escrituras se completan en orden, así que cuando vuelve ya corrieron sus continuaciones.
+    public void vaciar() {
+        enviar(conn -> null).exceptionally(e -> null).join();
+    }
+
+    // Lo que ya estaba en la cola se confirma antes de terminar.
+    @Override
+    public void close() {
+        cola.add(FIN);
+        try {
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.mycompany.servidormulti;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+// Hilo escritor del modo bloqueante: vacía la ColaSalida de un cliente hacia su socket.
+// Las tramas que ya esperan en la cola se escriben juntas y se vacía el búfer al quedar vacía.
+public class EscritorSalida implements Runnable {
+    private final ColaSalida cola;
+    private final Socket socket;
+
+    public EscritorSalida(ColaSalida cola, Socket socket) {
+        this.cola = cola;
+        this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+        try {
+            OutputStream salida = new BufferedOutputStream(socket.getOutputStream());
+            ByteBuffer trama;
+            while ((trama = cola.tomar()) != null) {
+                escribir(salida, trama);
+                if (cola.estaVacia()) {
+                    salida.flush();
+                }
+            }
+            salida.flush();
+        } catch (IOException e) {
+            // El cliente cerró la conexión; el hilo lector se encarga de la desconexión.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            cola.close();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void escribir(OutputStream salida, ByteBuffer trama) throws IOException {
+        if (trama.hasArray()) {
+            salida.write(trama.array(), trama.arrayOffset() + trama.position(), trama.remaining());
+        } else {
+            byte[] copia = new byte[trama.remaining()];
+            trama.duplicate().get(copia);
+            salida.write(copia);
+        }
+    }
+}
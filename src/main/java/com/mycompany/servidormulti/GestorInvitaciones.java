@@ -0,0 +1,183 @@
+package com.mycompany.servidormulti;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Invitaciones a jugar Gato pendientes. Las llaves son las sesiones mismas (UnCliente no
+// redefine equals, así que se comparan por identidad) y no cadenas armadas en cada consulta.
+// Un jugador puede tener varias invitaciones recibidas, en orden de llegada y con un tope;
+// cada una vence sola a los TTL segundos desde la RuedaTemporizadores y se cancelan todas
+// las de un jugador cuando se desconecta o cierra sesión. Salvo al vencer, los avisos a los
+// jugadores los manda quien llama, fuera del cerrojo.
+public class GestorInvitaciones {
+    public enum Resultado { ENVIADA, DUPLICADA, BUZON_LLENO }
+
+    private static final long TTL = Long.getLong("chat.invitacion.ttl", 60);
+    private static final int MAX_PENDIENTES = Integer.getInteger("chat.invitacion.max", 8);
+
+    private static final LongAdder ENVIADAS = Metricas.contador("invitaciones.enviadas");
+    private static final LongAdder ACEPTADAS = Metricas.contador("invitaciones.aceptadas");
+    private static final LongAdder RECHAZADAS = Metricas.contador("invitaciones.rechazadas");
+    private static final LongAdder VENCIDAS = Metricas.contador("invitaciones.vencidas");
+    private static final LongAdder CANCELADAS = Metricas.contador("invitaciones.canceladas");
+
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final Map<UnCliente, LinkedHashMap<UnCliente, Invitacion>> recibidas = new HashMap<>();
+    private final Map<UnCliente, Map<UnCliente, Invitacion>> enviadas = new HashMap<>();
+    private int pendientes;
+
+    public Resultado invitar(UnCliente invitador, UnCliente invitado) {
+        cerrojo.lock();
+        try {
+            LinkedHashMap<UnCliente, Invitacion> buzon = recibidas.computeIfAbsent(invitado, c -> new LinkedHashMap<>());
+            if (buzon.containsKey(invitador)) return Resultado.DUPLICADA;
+            if (buzon.size() >= MAX_PENDIENTES) return Resultado.BUZON_LLENO;
+
+            Invitacion invitacion = new Invitacion(invitador, invitado);
+            invitacion.vencimiento = RuedaTemporizadores.global().programar(TTL, TimeUnit.SECONDS, () -> vencer(invitacion));
+            buzon.put(invitador, invitacion);
+            enviadas.computeIfAbsent(invitador, c -> new HashMap<>()).put(invitado, invitacion);
+            pendientes++;
+        } finally {
+            cerrojo.unlock();
+        }
+        ENVIADAS.increment();
+        return Resultado.ENVIADA;
+    }
+
+    // Saca la invitación de ese invitador, o la más antigua si invitador es null.
+    public Invitacion aceptar(UnCliente invitado, UnCliente invitador) {
+        Invitacion invitacion = tomar(invitado, invitador);
+        if (invitacion != null) ACEPTADAS.increment();
+        return invitacion;
+    }
+
+    public Invitacion rechazar(UnCliente invitado, UnCliente invitador) {
+        Invitacion invitacion = tomar(invitado, invitador);
+        if (invitacion != null) RECHAZADAS.increment();
+        return invitacion;
+    }
+
+    private Invitacion tomar(UnCliente invitado, UnCliente invitador) {
+        Invitacion invitacion;
+        cerrojo.lock();
+        try {
+            LinkedHashMap<UnCliente, Invitacion> buzon = recibidas.get(invitado);
+            if (buzon == null || buzon.isEmpty()) return null;
+            invitacion = invitador != null ? buzon.get(invitador) : buzon.values().iterator().next();
+            if (invitacion == null) return null;
+            quitar(invitacion);
+        } finally {
+            cerrojo.unlock();
+        }
+        invitacion.vencimiento.cancelar();
+        return invitacion;
+    }
+
+    public List<String> pendientesDe(UnCliente invitado) {
+        cerrojo.lock();
+        try {
+            LinkedHashMap<UnCliente, Invitacion> buzon = recibidas.get(invitado);
+            if (buzon == null) return Collections.emptyList();
+            List<String> nombres = new ArrayList<>(buzon.size());
+            buzon.values().forEach(invitacion -> nombres.add(invitacion.nombreInvitador));
+            return nombres;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // Todas las que envió o recibió el jugador; quien llama avisa a la otra parte.
+    public List<Invitacion> cancelarTodas(UnCliente cliente) {
+        List<Invitacion> canceladas = new ArrayList<>();
+        cerrojo.lock();
+        try {
+            LinkedHashMap<UnCliente, Invitacion> buzon = recibidas.get(cliente);
+            if (buzon != null) canceladas.addAll(buzon.values());
+            Map<UnCliente, Invitacion> propias = enviadas.get(cliente);
+            if (propias != null) canceladas.addAll(propias.values());
+            canceladas.forEach(this::quitar);
+        } finally {
+            cerrojo.unlock();
+        }
+        canceladas.forEach(invitacion -> invitacion.vencimiento.cancelar());
+        CANCELADAS.add(canceladas.size());
+        return canceladas;
+    }
+
+    // Corre en el hilo de la rueda; solo encola los avisos.
+    private void vencer(Invitacion invitacion) {
+        cerrojo.lock();
+        try {
+            LinkedHashMap<UnCliente, Invitacion> buzon = recibidas.get(invitacion.invitado);
+            if (buzon == null || buzon.get(invitacion.invitador) != invitacion) return;
+            quitar(invitacion);
+        } finally {
+            cerrojo.unlock();
+        }
+        VENCIDAS.increment();
+        invitacion.invitado.avisar("[GATO]: La invitación de " + invitacion.nombreInvitador + " expiró.");
+        invitacion.invitador.avisar("[GATO]: Tu invitación a " + invitacion.nombreInvitado + " expiró.");
+    }
+
+    // Con el cerrojo tomado. Los mapas vacíos se quitan para no acumular sesiones ya cerradas.
+    private void quitar(Invitacion invitacion) {
+        LinkedHashMap<UnCliente, Invitacion> buzon = recibidas.get(invitacion.invitado);
+        if (buzon != null && buzon.remove(invitacion.invitador, invitacion)) {
+            pendientes--;
+            if (buzon.isEmpty()) recibidas.remove(invitacion.invitado);
+        }
+        Map<UnCliente, Invitacion> propias = enviadas.get(invitacion.invitador);
+        if (propias != null) {
+            propias.remove(invitacion.invitado, invitacion);
+            if (propias.isEmpty()) enviadas.remove(invitacion.invitador);
+        }
+    }
+
+    public int getPendientes() {
+        cerrojo.lock();
+        try {
+            return pendientes;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public static final class Invitacion {
+        private final UnCliente invitador;
+        private final UnCliente invitado;
+        private final String nombreInvitador;
+        private final String nombreInvitado;
+        private RuedaTemporizadores.Temporizador vencimiento;
+
+        private Invitacion(UnCliente invitador, UnCliente invitado) {
+            this.invitador = invitador;
+            this.invitado = invitado;
+            this.nombreInvitador = invitador.getNombreCliente();
+            this.nombreInvitado = invitado.getNombreCliente();
+        }
+
+        public UnCliente getInvitador() {
+            return invitador;
+        }
+
+        public UnCliente getInvitado() {
+            return invitado;
+        }
+
+        public String getNombreInvitador() {
+            return nombreInvitador;
+        }
+
+        public String getNombreInvitado() {
+            return nombreInvitado;
+        }
+    }
+}
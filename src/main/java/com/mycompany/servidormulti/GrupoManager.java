@@ -1,6 +1,422 @@
-
 package com.mycompany.servidormulti;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Dueño del estado de los grupos. Cada grupo es un actor: tiene un buzón de tareas que se
+// atienden de una en una, en orden de llegada, en un hilo del ejecutor (como ConexionNIO con
+// sus tramas). Unirse, salir, publicar, eliminar y las difusiones de un grupo pasan todas
+// por su buzón, así que entre ellas no hay carreras (una eliminación no se cruza con una
+// publicación) y grupos distintos avanzan en paralelo sin ningún cerrojo compartido.
+//
+// El catálogo de nombres se carga al arrancar; los miembros de cada grupo se cargan de la
+// base la primera vez que una tarea los necesita y desde ahí se mantienen en memoria junto
+// con el subconjunto de miembros conectados, que es a quien se difunde. Unirse, salir, crear
+// y eliminar los actualizan en el mismo paso en que escriben la base, así que publicar no
+// vuelve a preguntarle a la base quién es miembro.
+//
+// A lo más MAX_CARGADOS grupos (sin contar Todos) tienen sus miembros en memoria. Al pasarse
+// se descarga uno con el algoritmo del reloj: los grupos cargados esperan en una cola y cada
+// uso les pone una marca; al sacar uno marcado se le quita la marca y vuelve al final, y el
+// primero sin marca se descarga. Así los grupos fríos sueltan su memoria y los activos no.
+// Descargar es una tarea más del buzón del grupo; la siguiente que necesite los miembros los
+// vuelve a cargar.
 public class GrupoManager {
-    
+    public enum Resultado { HECHO, NO_EXISTE, YA_EXISTE, YA_MIEMBRO, NO_MIEMBRO, FALLO }
+
+    public static final String TODOS = "Todos";
+    private static final int TAREAS_POR_TURNO = 64;
+    private static final int MAX_CARGADOS = Integer.getInteger("chat.grupos.cargados", 1024);
+
+    private static final LongAdder ACIERTOS = Metricas.contador("grupos.miembros.aciertos");
+    private static final LongAdder FALLOS = Metricas.contador("grupos.miembros.fallos");
+    private static final LongAdder DESALOJOS = Metricas.contador("grupos.miembros.desalojos");
+
+    private final ConcurrentHashMap<String, Grupo> grupos = new ConcurrentHashMap<>();
+    private final BaseDatos bd;
+    private final RegistroSesiones sesiones;
+    private final MarcasLeido marcas;
+    private final Executor ejecutor;
+    private final ConcurrentLinkedQueue<Grupo> reloj = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger cargados = new AtomicInteger();
+
+    public GrupoManager(BaseDatos bd, RegistroSesiones sesiones, MarcasLeido marcas, Executor ejecutor) {
+        this.bd = bd;
+        this.sesiones = sesiones;
+        this.marcas = marcas;
+        this.ejecutor = ejecutor;
+        for (String nombre : bd.obtenerNombresGrupos()) {
+            grupos.put(nombre, new Grupo(nombre, true));
+        }
+        Metricas.registrarIndicador("grupos.total", grupos::size);
+        Metricas.registrarIndicador("grupos.miembros.cargados", cargados::get);
+    }
+
+    public boolean existe(String nombre) {
+        return grupos.containsKey(nombre);
+    }
+
+    // La tarea de crear queda en el buzón antes de publicar el grupo, así cualquier otra
+    // tarea que le llegue se atiende después de que exista en la base.
+    public Resultado crear(String nombre, int creador) {
+        Grupo grupo = new Grupo(nombre, false);
+        CompletableFuture<Resultado> resultado = grupo.encolar(() -> grupo.crear(creador));
+        if (grupos.putIfAbsent(nombre, grupo) != null) return Resultado.YA_EXISTE;
+        grupo.programar();
+        return resultado.join();
+    }
+
+    // quien no recibe el aviso de eliminación; ya lo atiende su propio comando.
+    public Resultado eliminar(String nombre, UnCliente quien) {
+        Grupo grupo = grupos.get(nombre);
+        return grupo == null ? Resultado.NO_EXISTE : grupo.pedir(() -> grupo.eliminar(quien));
+    }
+
+    public Resultado unirse(int usuario, String nombre) {
+        Grupo grupo = grupos.get(nombre);
+        return grupo == null ? Resultado.NO_EXISTE : grupo.pedir(() -> grupo.unirse(usuario));
+    }
+
+    public Resultado salir(int usuario, String nombre) {
+        Grupo grupo = grupos.get(nombre);
+        return grupo == null ? Resultado.NO_EXISTE : grupo.pedir(() -> grupo.salir(usuario));
+    }
+
+    public boolean esMiembro(int usuario, String nombre) {
+        Grupo grupo = grupos.get(nombre);
+        return grupo != null && grupo.pedir(() -> grupo.contiene(usuario));
+    }
+
+    public int[] miembros(String nombre) {
+        Grupo grupo = grupos.get(nombre);
+        return grupo == null ? new int[0] : grupo.pedir(grupo::idsMiembros);
+    }
+
+    // Nombres de los miembros, en orden, para mostrarlos.
+    public List<String> nombresMiembros(String nombre) {
+        List<String> nombres = new ArrayList<>();
+        for (int id : miembros(nombre)) {
+            String miembro = sesiones.nombreDe(id);
+            if (miembro != null) nombres.add(miembro);
+        }
+        nombres.sort(null);
+        return nombres;
+    }
+
+    // Se espera a que quede guardado y difundido: el remitente sabe si no era miembro o si no se
+    // pudo guardar, y sus siguientes mensajes salen en el mismo orden. El actor no espera el
+    // commit: sigue con otras tareas y los mensajes de un grupo activo se confirman juntos.
+    public Resultado publicar(String nombre, UnCliente remitente, String mensaje) {
+        Grupo grupo = grupos.get(nombre);
+        return grupo == null ? Resultado.NO_EXISTE : grupo.pedir(() -> grupo.publicar(remitente, mensaje)).join();
+    }
+
+    // Mensaje de un invitado: no se guarda; solo lo ven los conectados de Todos.
+    public void publicarInvitado(UnCliente remitente, String mensaje) {
+        Grupo grupo = grupos.get(TODOS);
+        if (grupo != null) grupo.enviar(() -> grupo.publicarInvitado(remitente, mensaje));
+    }
+
+    // Aviso de sistema para los conectados que tienen ese grupo activo, salvo excepto.
+    public void avisar(String nombre, int excepto, String aviso) {
+        Grupo grupo = grupos.get(nombre);
+        if (grupo != null) grupo.enviar(() -> grupo.avisar(excepto, aviso));
+    }
+
+    // Al registrarse la base ya lo unió a Todos; aquí solo se refleja en memoria.
+    public void registrado(int usuario) {
+        Grupo grupo = grupos.get(TODOS);
+        if (grupo != null) grupo.enviar(() -> grupo.agregarRegistrado(usuario));
+    }
+
+    // Se llaman después de actualizar RegistroSesiones. Un grupo que todavía no cargó sus
+    // miembros no hace nada: al cargarlos revisa quién está conectado.
+    public void conectar(int usuario) {
+        for (String nombre : bd.obtenerMisGrupos(usuario)) {
+            Grupo grupo = grupos.get(nombre);
+            if (grupo != null) grupo.enviar(() -> grupo.conectar(usuario));
+        }
+    }
+
+    public void desconectar(int usuario) {
+        for (String nombre : bd.obtenerMisGrupos(usuario)) {
+            Grupo grupo = grupos.get(nombre);
+            if (grupo != null) grupo.enviar(() -> grupo.enLinea.quitar(usuario));
+        }
+    }
+
+    // Lo llama el grupo que acaba de cargar sus miembros, desde su buzón.
+    private void entrarAlReloj(Grupo grupo) {
+        if (TODOS.equals(grupo.nombre) || !grupo.enReloj.compareAndSet(false, true)) return;
+        reloj.add(grupo);
+        cargados.incrementAndGet();
+        desalojar();
+    }
+
+    // Cada vuelta quita una marca o saca un grupo, así que termina aunque todos estén en uso.
+    // Un grupo eliminado que siga en la cola sale sin más.
+    private void desalojar() {
+        int vueltas = 2 * MAX_CARGADOS + 2;
+        while (cargados.get() > MAX_CARGADOS && vueltas-- > 0) {
+            Grupo grupo = reloj.poll();
+            if (grupo == null) return;
+            if (grupo.usado && grupos.get(grupo.nombre) == grupo) {
+                grupo.usado = false;
+                reloj.add(grupo);
+                continue;
+            }
+            cargados.decrementAndGet();
+            grupo.enReloj.set(false);
+            grupo.enviar(grupo::descargar);
+        }
+    }
+
+    private final class Grupo {
+        private final String nombre;
+        private final ConcurrentLinkedQueue<Runnable> buzon = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean programado = new AtomicBoolean(false);
+        private final AtomicBoolean enReloj = new AtomicBoolean(false);
+        // La marca del reloj: la pone cada uso, la quita desalojar().
+        private volatile boolean usado;
+        // Solo los tocan las tareas del buzón, que nunca corren dos a la vez.
+        private boolean existe;
+        private boolean cargado;
+        private ConjuntoEnteros miembros = new ConjuntoEnteros();
+        private ConjuntoEnteros enLinea = new ConjuntoEnteros();
+
+        Grupo(String nombre, boolean existe) {
+            this.nombre = nombre;
+            this.existe = existe;
+            this.cargado = !existe;
+        }
+
+        void enviar(Runnable tarea) {
+            buzon.add(tarea);
+            programar();
+        }
+
+        <T> CompletableFuture<T> encolar(Supplier<T> tarea) {
+            CompletableFuture<T> resultado = new CompletableFuture<>();
+            buzon.add(() -> {
+                try {
+                    resultado.complete(tarea.get());
+                } catch (RuntimeException e) {
+                    resultado.completeExceptionally(e);
+                }
+            });
+            return resultado;
+        }
+
+        <T> T pedir(Supplier<T> tarea) {
+            CompletableFuture<T> resultado = encolar(tarea);
+            programar();
+            return resultado.join();
+        }
+
+        void programar() {
+            if (programado.compareAndSet(false, true)) {
+                ejecutor.execute(this::atender);
+            }
+        }
+
+        // Un grupo con mucho tráfico suelta el hilo cada TAREAS_POR_TURNO tareas.
+        private void atender() {
+            try {
+                Runnable tarea;
+                for (int i = 0; i < TAREAS_POR_TURNO && (tarea = buzon.poll()) != null; i++) {
+                    try {
+                        tarea.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                programado.set(false);
+                if (!buzon.isEmpty()) programar();
+            }
+        }
+
+        private void cargar() {
+            usado = true;
+            if (cargado) {
+                ACIERTOS.increment();
+                return;
+            }
+            FALLOS.increment();
+            cargado = true;
+            miembros = ConjuntoEnteros.de(bd.obtenerIdsMiembrosGrupo(nombre));
+            int[] ids = miembros.aArreglo();
+            int[] conectados = new int[ids.length];
+            int total = 0;
+            for (int id : ids) {
+                if (sesiones.obtener(id) != null) conectados[total++] = id;
+            }
+            enLinea = ConjuntoEnteros.de(Arrays.copyOf(conectados, total));
+            entrarAlReloj(this);
+        }
+
+        // Si mientras esperaba en el buzón volvió a entrar al reloj, se queda cargado.
+        void descargar() {
+            if (!cargado || !existe || enReloj.get()) return;
+            cargado = false;
+            miembros = new ConjuntoEnteros();
+            enLinea = new ConjuntoEnteros();
+            DESALOJOS.increment();
+        }
+
+        boolean contiene(int usuario) {
+            if (!existe) return false;
+            cargar();
+            return miembros.contiene(usuario);
+        }
+
+        int[] idsMiembros() {
+            cargar();
+            return miembros.aArreglo();
+        }
+
+        Resultado crear(int creador) {
+            if (!bd.crearGrupo(nombre, creador)) {
+                grupos.remove(nombre, this);
+                return Resultado.FALLO;
+            }
+            existe = true;
+            miembros.agregar(creador);
+            if (sesiones.obtener(creador) != null) enLinea.agregar(creador);
+            usado = true;
+            entrarAlReloj(this);
+            return Resultado.HECHO;
+        }
+
+        // Las tareas que sigan en el buzón ven el grupo como inexistente; uno nuevo con el
+        // mismo nombre es otro actor que empieza cuando la base ya lo borró.
+        Resultado eliminar(UnCliente quien) {
+            if (!existe) return Resultado.NO_EXISTE;
+            if (!bd.eliminarGrupo(nombre)) return Resultado.FALLO;
+            cargar();
+            existe = false;
+            grupos.remove(nombre, this);
+            for (int id : enLinea.aArreglo()) {
+                UnCliente cliente = sesiones.obtener(id);
+                if (cliente != null && cliente != quien) cliente.grupoEliminado(nombre);
+            }
+            return Resultado.HECHO;
+        }
+
+        Resultado unirse(int usuario) {
+            if (!existe) return Resultado.NO_EXISTE;
+            cargar();
+            if (miembros.contiene(usuario)) return Resultado.YA_MIEMBRO;
+            if (!bd.unirseAGrupo(usuario, nombre)) return Resultado.FALLO;
+            miembros.agregar(usuario);
+            if (sesiones.obtener(usuario) != null) enLinea.agregar(usuario);
+            return Resultado.HECHO;
+        }
+
+        Resultado salir(int usuario) {
+            if (!existe) return Resultado.NO_EXISTE;
+            cargar();
+            if (!miembros.contiene(usuario)) return Resultado.NO_MIEMBRO;
+            if (!bd.salirDeGrupo(usuario, nombre)) return Resultado.FALLO;
+            miembros.quitar(usuario);
+            enLinea.quitar(usuario);
+            return Resultado.HECHO;
+        }
+
+        // Se difunde hasta que el mensaje quedó guardado, con su id. El escritor confirma en orden
+        // de llegada, así que las difusiones vuelven al buzón en el mismo orden que los mensajes.
+        CompletableFuture<Resultado> publicar(UnCliente remitente, String mensaje) {
+            if (!existe) return CompletableFuture.completedFuture(Resultado.NO_EXISTE);
+            cargar();
+            int idRemitente = remitente.getIdUsuario();
+            if (!miembros.contiene(idRemitente)) return CompletableFuture.completedFuture(Resultado.NO_MIEMBRO);
+
+            return bd.guardarMensajeGrupo(nombre, idRemitente, mensaje)
+                .thenCompose(idMensaje -> {
+                    CompletableFuture<Resultado> difundido = encolar(() -> difundir(remitente, mensaje, idMensaje));
+                    programar();
+                    return difundido;
+                })
+                .exceptionally(e -> Resultado.FALLO);
+        }
+
+        // Si el grupo se eliminó mientras se guardaba, el borrado ya se llevó el mensaje.
+        private Resultado difundir(UnCliente remitente, String mensaje, long idMensaje) {
+            if (!existe) return Resultado.NO_EXISTE;
+            int idRemitente = remitente.getIdUsuario();
+            marcas.marcar(idRemitente, nombre, idMensaje);
+
+            TramaCodificada completo = trama("[" + nombre + "] " + remitente.getNombreCliente() + ": " + mensaje);
+            TramaCodificada aviso = null;
+            for (int id : enLinea.aArreglo()) {
+                if (id == idRemitente) continue;
+                UnCliente cliente = sesiones.obtener(id);
+                if (cliente == null || cliente.estaJugando()) continue;
+                if (nombre.equals(cliente.getGrupoActual())) {
+                    cliente.enviar(completo);
+                    marcas.marcar(id, nombre, idMensaje);
+                } else {
+                    if (aviso == null) aviso = trama("[NOTIFICACIÓN]: Nuevo mensaje en '" + nombre + "'");
+                    cliente.enviar(aviso);
+                }
+            }
+            return Resultado.HECHO;
+        }
+
+        void publicarInvitado(UnCliente remitente, String mensaje) {
+            cargar();
+            TramaCodificada completo = trama("[" + nombre + "] " + remitente.getNombreCliente() + ": " + mensaje);
+            TramaCodificada aviso = null;
+            for (int id : enLinea.aArreglo()) {
+                UnCliente cliente = sesiones.obtener(id);
+                if (cliente == null || cliente == remitente || cliente.estaJugando()) continue;
+                if (nombre.equals(cliente.getGrupoActual())) {
+                    cliente.enviar(completo);
+                } else {
+                    if (aviso == null) aviso = trama("[NOTIFICACIÓN]: Nuevo mensaje en '" + nombre + "'");
+                    cliente.enviar(aviso);
+                }
+            }
+        }
+
+        void avisar(int excepto, String texto) {
+            cargar();
+            TramaCodificada aviso = null;
+            for (int id : enLinea.aArreglo()) {
+                if (id == excepto) continue;
+                UnCliente cliente = sesiones.obtener(id);
+                if (cliente == null || cliente.estaJugando() || !nombre.equals(cliente.getGrupoActual())) continue;
+                if (aviso == null) aviso = trama(texto);
+                cliente.enviar(aviso);
+            }
+        }
+
+        void agregarRegistrado(int usuario) {
+            if (!cargado) return;
+            miembros.agregar(usuario);
+            if (sesiones.obtener(usuario) != null) enLinea.agregar(usuario);
+        }
+
+        void conectar(int usuario) {
+            if (cargado && miembros.contiene(usuario)) enLinea.agregar(usuario);
+        }
+    }
+
+    private static TramaCodificada trama(String texto) {
+        try {
+            return TramaCodificada.de(texto);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
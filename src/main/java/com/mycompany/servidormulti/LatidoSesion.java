@@ -0,0 +1,130 @@
+package com.mycompany.servidormulti;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latidos y tiempo de inactividad de una sesión, revisados desde la RuedaTemporizadores.
+// Cada INTERVALO se manda un PING; un cliente que ya contestó alguno con PONG y deja de
+// hacerlo por más de ESPERA_PONG se da por caído (conexión medio abierta). El primer PING es
+// de prueba: si no llega PONG, el cliente es de los viejos que no conocen el PING (lo verían
+// como una línea más), no se le mandan otros y solo se corta por inactividad. Si contesta
+// más tarde, los latidos siguen con normalidad. Cortar la conexión hace que el hilo
+// de la sesión pase por UnCliente.manejarDesconexion como en cualquier otra desconexión.
+public class LatidoSesion {
+    public static final String PING = "@@ping";
+    public static final String PONG = "@@pong";
+
+    private static final long INTERVALO = TimeUnit.SECONDS.toMillis(Long.getLong("chat.latido.intervalo", 30));
+    private static final long ESPERA_PONG = TimeUnit.SECONDS.toMillis(Long.getLong("chat.latido.espera", 10));
+    private static final long INACTIVIDAD = TimeUnit.SECONDS.toMillis(Long.getLong("chat.inactividad", 1800));
+
+    private static final TramaCodificada TRAMA_PING = tramaPing();
+    private static final ByteBuffer TRAMA_PING_V2 = ByteBuffer.wrap(ProtocoloV2.tramaSinCampos(ProtocoloV2.PING));
+
+    private static final LongAdder PINGS = Metricas.contador("latido.pings");
+    private static final LongAdder COSECHADAS_INACTIVIDAD = Metricas.contador("sesiones.cosechadas.inactividad");
+    private static final LongAdder COSECHADAS_SIN_PONG = Metricas.contador("sesiones.cosechadas.sin_pong");
+
+    private final UnCliente cliente;
+    private final ColaSalida cola;
+    private volatile long ultimaActividad;
+    private volatile long ultimaSenal;
+    private volatile long pingEnviado;
+    private volatile boolean respondePing;
+    private volatile RuedaTemporizadores.Temporizador temporizador;
+    private volatile boolean detenido;
+
+    LatidoSesion(UnCliente cliente, ColaSalida cola) {
+        this.cliente = cliente;
+        this.cola = cola;
+        this.ultimaActividad = System.currentTimeMillis();
+        this.ultimaSenal = ultimaActividad;
+    }
+
+    private static TramaCodificada tramaPing() {
+        try {
+            return TramaCodificada.de(PING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void iniciar() {
+        if (INTERVALO > 0 || INACTIVIDAD > 0) {
+            programar(siguienteRevision(System.currentTimeMillis()));
+        }
+    }
+
+    void detener() {
+        detenido = true;
+        RuedaTemporizadores.Temporizador actual = temporizador;
+        if (actual != null) actual.cancelar();
+    }
+
+    // Cualquier comando del cliente; también prueba que la conexión sigue viva.
+    void registrarActividad() {
+        long ahora = System.currentTimeMillis();
+        ultimaActividad = ahora;
+        ultimaSenal = ahora;
+    }
+
+    void registrarPong() {
+        respondePing = true;
+        ultimaSenal = System.currentTimeMillis();
+    }
+
+    private void programar(long retraso) {
+        if (detenido) return;
+        temporizador = RuedaTemporizadores.global().programar(Math.max(0, retraso), TimeUnit.MILLISECONDS, this::revisar);
+    }
+
+    // Corre en el hilo de la rueda: solo encola el PING o corta la conexión, nunca bloquea.
+    private void revisar() {
+        if (detenido || cola.estaCerrada()) return;
+        long ahora = System.currentTimeMillis();
+
+        if (INACTIVIDAD > 0 && ahora - ultimaActividad >= INACTIVIDAD) {
+            cosechar("inactividad", COSECHADAS_INACTIVIDAD);
+            return;
+        }
+        if (esperandoPong() && ahora - pingEnviado >= ESPERA_PONG) {
+            cosechar("sin respuesta al ping", COSECHADAS_SIN_PONG);
+            return;
+        }
+        if (tocaPing() && ahora - Math.max(pingEnviado, ultimaSenal) >= INTERVALO) {
+            pingEnviado = ahora;
+            cola.encolar(cliente.usaProtocoloV2() ? TRAMA_PING_V2.duplicate() : TRAMA_PING.vista());
+            PINGS.increment();
+        }
+        programar(siguienteRevision(ahora));
+    }
+
+    private boolean esperandoPong() {
+        return respondePing && pingEnviado > ultimaSenal;
+    }
+
+    // Sin PONG nunca, después del PING de prueba ya no se manda otro.
+    private boolean tocaPing() {
+        return INTERVALO > 0 && !esperandoPong() && (respondePing || pingEnviado == 0);
+    }
+
+    private long siguienteRevision(long ahora) {
+        long siguiente = Long.MAX_VALUE;
+        if (INACTIVIDAD > 0) siguiente = Math.min(siguiente, ultimaActividad + INACTIVIDAD);
+        if (esperandoPong()) {
+            siguiente = Math.min(siguiente, pingEnviado + ESPERA_PONG);
+        } else if (tocaPing()) {
+            siguiente = Math.min(siguiente, Math.max(pingEnviado, ultimaSenal) + INTERVALO);
+        }
+        return siguiente - ahora;
+    }
+
+    private void cosechar(String motivo, LongAdder contador) {
+        contador.increment();
+        System.out.println("Cerrando la sesión de " + cliente.getNombreCliente() + " por " + motivo + ".");
+        cola.desconectar();
+    }
+}
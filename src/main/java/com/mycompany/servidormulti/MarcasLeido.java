@@ -0,0 +1,175 @@
+package com.mycompany.servidormulti;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hasta qué mensaje leyó cada usuario en cada grupo. Antes cada mensaje difundido escribía una
+// fila por miembro conectado; ahora la marca se sube en memoria (solo hacia adelante) y las
+// que cambiaron se guardan juntas en mensajes_leidos cada INTERVALO_MS, al cerrar sesión y al
+// detener el servidor. Las lecturas de no leídos toman la mayor entre la de memoria y la de la
+// base, así que la sesión nunca ve de nuevo lo que ya se le mostró.
+//
+// Si el proceso muere sin detenerse se pierden las marcas de los últimos INTERVALO_MS como
+// mucho: al volver a entrar, esos mensajes aparecen otra vez como no leídos. Nunca al revés:
+// una marca solo se guarda después de que su mensaje quedó confirmado (la difusión espera al
+// escritor) y el guardado toma el mayor con lo que ya hay, así que la base no marca como leído
+// algo que no existe ni retrocede. Si un guardado falla, sus marcas quedan pendientes para el
+// siguiente.
+public class MarcasLeido {
+    private static final long INTERVALO_MS = Long.getLong("chat.leidos.intervalo", 1000);
+
+    private static final LongAdder MARCAS = Metricas.contador("leidos.marcas");
+    private static final LongAdder GUARDADAS = Metricas.contador("leidos.guardadas");
+    private static final LongAdder VOLCADOS = Metricas.contador("leidos.volcados");
+
+    // leido es lo último mostrado; guardado, lo último que se mandó a la base. Inmutable: se
+    // reemplaza dentro de compute, así marcar y volcar no se pisan.
+    private static final class Marca {
+        final long leido;
+        final long guardado;
+
+        Marca(long leido, long guardado) {
+            this.leido = leido;
+            this.guardado = guardado;
+        }
+
+        boolean pendiente() {
+            return leido > guardado;
+        }
+    }
+
+    public static final class Pendiente {
+        public final int usuario;
+        public final String grupo;
+        public final long idMensaje;
+
+        Pendiente(int usuario, String grupo, long idMensaje) {
+            this.usuario = usuario;
+            this.grupo = grupo;
+            this.idMensaje = idMensaje;
+        }
+    }
+
+    private final ArregloPorId<ConcurrentHashMap<String, Marca>> porUsuario = new ArregloPorId<>();
+    // Usuarios con alguna marca sin guardar; volcar() solo recorre estos.
+    private final Set<Integer> conPendientes = ConcurrentHashMap.newKeySet();
+    private final BaseDatos bd;
+    private volatile RuedaTemporizadores.Temporizador temporizador;
+    private volatile boolean detenido;
+
+    public MarcasLeido(BaseDatos bd) {
+        this.bd = bd;
+        Metricas.registrarIndicador("leidos.usuarios_pendientes", conPendientes::size);
+    }
+
+    public void iniciar() {
+        programar();
+    }
+
+    private void programar() {
+        if (!detenido) temporizador = RuedaTemporizadores.global().programar(INTERVALO_MS, TimeUnit.MILLISECONDS, this::periodico);
+    }
+
+    // Corre en la rueda: solo encola el guardado, no lo espera.
+    private void periodico() {
+        volcar();
+        programar();
+    }
+
+    public void marcar(int usuario, String grupo, long idMensaje) {
+        if (usuario <= 0 || idMensaje <= 0) return;
+        marcasDe(usuario).compute(grupo, (g, marca) -> {
+            if (marca == null) return new Marca(idMensaje, 0);
+            return idMensaje > marca.leido ? new Marca(idMensaje, marca.guardado) : marca;
+        });
+        conPendientes.add(usuario);
+        MARCAS.increment();
+    }
+
+    private ConcurrentHashMap<String, Marca> marcasDe(int usuario) {
+        ConcurrentHashMap<String, Marca> marcas = porUsuario.obtener(usuario);
+        if (marcas == null) {
+            ConcurrentHashMap<String, Marca> nuevas = new ConcurrentHashMap<>();
+            marcas = porUsuario.ponerSiAusente(usuario, nuevas);
+            if (marcas == null) marcas = nuevas;
+        }
+        return marcas;
+    }
+
+    // 0 si en memoria no hay nada; entonces manda la de la base.
+    public long leido(int usuario, String grupo) {
+        ConcurrentHashMap<String, Marca> marcas = usuario > 0 ? porUsuario.obtener(usuario) : null;
+        Marca marca = marcas == null ? null : marcas.get(grupo);
+        return marca == null ? 0 : marca.leido;
+    }
+
+    public CompletableFuture<Void> volcar() {
+        List<Pendiente> lote = new ArrayList<>();
+        for (Integer usuario : conPendientes) {
+            // Se quita antes de recorrer: una marca que llegue durante el recorrido lo vuelve a poner.
+            conPendientes.remove(usuario);
+            ConcurrentHashMap<String, Marca> marcas = porUsuario.obtener(usuario);
+            if (marcas != null) tomarPendientes(usuario, marcas, lote);
+        }
+        return guardar(lote);
+    }
+
+    // Al cerrar sesión: se sueltan de memoria, se guardan y se espera el commit, así lo que ya
+    // se le mostró está en la base antes de que pueda volver a entrar. Una difusión que lo
+    // marque justo después deja otra entrada que guarda el volcado periódico, y si el guardado
+    // falla reintentar() las devuelve a memoria.
+    public void cerrarSesion(int usuario) {
+        if (usuario <= 0) return;
+        ConcurrentHashMap<String, Marca> marcas = porUsuario.obtener(usuario);
+        if (marcas == null || !porUsuario.quitar(usuario, marcas)) return;
+        List<Pendiente> lote = new ArrayList<>();
+        tomarPendientes(usuario, marcas, lote);
+        guardar(lote).join();
+    }
+
+    // Lo que quede pendiente se guarda antes de cerrar la base.
+    public void detener() {
+        detenido = true;
+        RuedaTemporizadores.Temporizador actual = temporizador;
+        if (actual != null) actual.cancelar();
+        volcar().join();
+    }
+
+    private static void tomarPendientes(int usuario, ConcurrentHashMap<String, Marca> marcas, List<Pendiente> lote) {
+        for (String grupo : marcas.keySet()) {
+            marcas.computeIfPresent(grupo, (g, marca) -> {
+                if (!marca.pendiente()) return marca;
+                lote.add(new Pendiente(usuario, g, marca.leido));
+                return new Marca(marca.leido, marca.leido);
+            });
+        }
+    }
+
+    private CompletableFuture<Void> guardar(List<Pendiente> lote) {
+        if (lote.isEmpty()) return CompletableFuture.completedFuture(null);
+        VOLCADOS.increment();
+        return bd.guardarMarcasLeido(lote)
+            .thenRun(() -> GUARDADAS.add(lote.size()))
+            .exceptionally(e -> {
+                System.err.println("Error guardando marcas de leído: " + e.getMessage());
+                reintentar(lote);
+                return null;
+            });
+    }
+
+    // guardado vuelve a 0 para que salgan en el siguiente volcado; el guardado toma el mayor,
+    // así que repetir una marca no cambia nada. Si cerrarSesion ya soltó las marcas del usuario,
+    // se vuelven a poner: si no, nadie las guardaría.
+    private void reintentar(List<Pendiente> lote) {
+        for (Pendiente pendiente : lote) {
+            marcasDe(pendiente.usuario).merge(pendiente.grupo, new Marca(pendiente.idMensaje, 0),
+                (marca, fallida) -> new Marca(Math.max(marca.leido, fallida.leido), 0));
+            conPendientes.add(pendiente.usuario);
+        }
+    }
+}
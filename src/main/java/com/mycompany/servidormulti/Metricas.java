@@ -0,0 +1,55 @@
+package com.mycompany.servidormulti;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Contadores e indicadores del servidor. Los contadores se guardan en campos estáticos de
+// quien los usa para no buscar en el mapa en cada incremento.
+public final class Metricas {
+    private static final Map<String, LongAdder> contadores = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> indicadores = new ConcurrentHashMap<>();
+
+    private Metricas() {
+    }
+
+    public static LongAdder contador(String nombre) {
+        return contadores.computeIfAbsent(nombre, n -> new LongAdder());
+    }
+
+    public static void registrarIndicador(String nombre, LongSupplier fuente) {
+        indicadores.put(nombre, fuente);
+    }
+
+    public static List<String> resumen() {
+        Map<String, Long> valores = new TreeMap<>();
+        contadores.forEach((nombre, valor) -> valores.put(nombre, valor.sum()));
+        indicadores.forEach((nombre, fuente) -> valores.put(nombre, fuente.getAsLong()));
+
+        List<String> lineas = new ArrayList<>();
+        valores.forEach((nombre, valor) -> lineas.add(nombre + " = " + valor));
+        return lineas;
+    }
+
+    public static void iniciarVolcadoPeriodico(int segundos) {
+        if (segundos <= 0) return;
+
+        Thread hilo = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(segundos * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.println("=== MÉTRICAS ===");
+                resumen().forEach(linea -> System.out.println("  " + linea));
+            }
+        }, "metricas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+}
@@ -0,0 +1,212 @@
+package com.mycompany.servidormulti;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Versiones del esquema de la base. El número de versión de cada archivo se guarda en
+// PRAGMA user_version; al arrancar se aplican en orden los pasos que le falten, cada uno en su
+// propia transacción junto con el nuevo número, así un arranque interrumpido deja el archivo
+// en la versión anterior o en la siguiente, nunca a medias. Un cambio de esquema es un paso
+// nuevo al final de PASOS; los que ya están no se tocan, porque hay archivos que ya los
+// aplicaron.
+//
+// Los archivos anteriores a este esquema de versiones tienen user_version 0. El paso 1 los
+// reconoce: los del esquema con nombres se migran a ids y los que ya usan ids (o los que no
+// existían) solo se aseguran de tener todas las tablas.
+final class MigracionesBD {
+    private interface Paso {
+        void aplicar(PoolConexiones.Conexion conn, Statement stmt) throws SQLException;
+    }
+
+    private static final String[] DESCRIPCIONES = {
+        "tablas con ids enteros",
+        "índices de no leídos, enfrentamientos y grupos por usuario"
+    };
+
+    private static final Paso[] PASOS = {
+        MigracionesBD::esquemaConIds,
+        MigracionesBD::indices
+    };
+
+    private MigracionesBD() {
+    }
+
+    static void aplicar(PoolConexiones.Conexion conn) throws SQLException {
+        int version = versionActual(conn);
+        if (version > PASOS.length) {
+            throw new SQLException("La base está en la versión " + version + " del esquema y este servidor solo conoce hasta la " + PASOS.length);
+        }
+        for (int i = version; i < PASOS.length; i++) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.crearSentencia()) {
+                PASOS[i].aplicar(conn, stmt);
+                stmt.execute("PRAGMA user_version = " + (i + 1));
+                conn.commit();
+                System.out.println("Esquema de la BD en versión " + (i + 1) + ": " + DESCRIPCIONES[i]);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static int versionActual(PoolConexiones.Conexion conn) throws SQLException {
+        try (Statement stmt = conn.crearSentencia();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // ==================== PASO 1 ====================
+
+    private static void esquemaConIds(PoolConexiones.Conexion conn, Statement stmt) throws SQLException {
+        if (usaEsquemaDeTexto(conn)) {
+            migrarAIdsEnteros(stmt);
+        } else {
+            crearTablas(stmt);
+        }
+    }
+
+    // Usuarios y grupos se referencian por id; los nombres solo viven en usuarios y grupos.
+    private static void crearTablas(Statement stmt) throws SQLException {
+        // Tabla de usuarios
+        stmt.execute("CREATE TABLE IF NOT EXISTS usuarios (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "nombre TEXT UNIQUE NOT NULL," +
+                "password TEXT NOT NULL," +
+                "fecha_registro TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        
+        // Tabla de bloqueos
+        stmt.execute("CREATE TABLE IF NOT EXISTS bloqueados (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "usuario_id INTEGER NOT NULL," +
+                "bloqueado_id INTEGER NOT NULL," +
+                "fecha_bloqueo TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "UNIQUE(usuario_id, bloqueado_id)," +
+                "FOREIGN KEY(usuario_id) REFERENCES usuarios(id)," +
+                "FOREIGN KEY(bloqueado_id) REFERENCES usuarios(id))");
+        
+        // Tabla de estadísticas de juego
+        stmt.execute("CREATE TABLE IF NOT EXISTS estadisticas_gato (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "jugador_id INTEGER NOT NULL," +
+                "victorias INTEGER DEFAULT 0," +
+                "empates INTEGER DEFAULT 0," +
+                "derrotas INTEGER DEFAULT 0," +
+                "puntos INTEGER DEFAULT 0," +
+                "UNIQUE(jugador_id)," +
+                "FOREIGN KEY(jugador_id) REFERENCES usuarios(id))");
+        
+        // Tabla de historial de partidas entre jugadores; ganador_id NULL es empate
+        stmt.execute("CREATE TABLE IF NOT EXISTS historial_partidas (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "jugador1_id INTEGER NOT NULL," +
+                "jugador2_id INTEGER NOT NULL," +
+                "ganador_id INTEGER," +
+                "fecha_partida TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "FOREIGN KEY(jugador1_id) REFERENCES usuarios(id)," +
+                "FOREIGN KEY(jugador2_id) REFERENCES usuarios(id))");
+        
+        // Tabla de grupos; creador_id NULL es el sistema
+        stmt.execute("CREATE TABLE IF NOT EXISTS grupos (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "nombre TEXT UNIQUE NOT NULL," +
+                "creador_id INTEGER," +
+                "fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        
+        // Tabla de miembros de grupos
+        stmt.execute("CREATE TABLE IF NOT EXISTS miembros_grupo (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "grupo_id INTEGER NOT NULL," +
+                "usuario_id INTEGER NOT NULL," +
+                "fecha_union TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+                "UNIQUE(grupo_id, usuario_id))");
+        
+        // Tabla de mensajes de grupo
+        stmt.execute("CREATE TABLE IF NOT EXISTS mensajes_grupo (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "grupo_id INTEGER NOT NULL," +
+                "remitente_id INTEGER NOT NULL," +
+                "mensaje TEXT NOT NULL," +
+                "fecha_envio TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        
+        // Tabla de mensajes leídos por usuario
+        stmt.execute("CREATE TABLE IF NOT EXISTS mensajes_leidos (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "usuario_id INTEGER NOT NULL," +
+                "grupo_id INTEGER NOT NULL," +
+                "ultimo_mensaje_id INTEGER DEFAULT 0," +
+                "UNIQUE(usuario_id, grupo_id))");
+    }
+    
+    // Las bases creadas antes de los ids enteros guardaban nombres en cada tabla.
+    private static boolean usaEsquemaDeTexto(PoolConexiones.Conexion conn) throws SQLException {
+        try (ResultSet rs = conn.jdbc().getMetaData().getColumns(null, null, "miembros_grupo", "grupo_nombre")) {
+            return rs.next();
+        }
+    }
+    
+    private static final String[] TABLAS_CON_NOMBRES = {
+        "bloqueados", "estadisticas_gato", "historial_partidas", "grupos",
+        "miembros_grupo", "mensajes_grupo", "mensajes_leidos"
+    };
+    
+    // Copia cada tabla vieja a la nueva traduciendo nombres a ids. Las filas que apuntan a
+    // usuarios o grupos que ya no existen se descartan.
+    private static void migrarAIdsEnteros(Statement stmt) throws SQLException {
+        for (String tabla : TABLAS_CON_NOMBRES) {
+            stmt.execute("ALTER TABLE " + tabla + " RENAME TO " + tabla + "_texto");
+        }
+        crearTablas(stmt);
+        
+        stmt.execute("INSERT INTO grupos (id, nombre, creador_id, fecha_creacion) " +
+                "SELECT g.id, g.nombre, u.id, g.fecha_creacion FROM grupos_texto g " +
+                "LEFT JOIN usuarios u ON u.nombre = g.creador");
+        stmt.execute("INSERT INTO bloqueados (id, usuario_id, bloqueado_id, fecha_bloqueo) " +
+                "SELECT b.id, u.id, v.id, b.fecha_bloqueo FROM bloqueados_texto b " +
+                "JOIN usuarios u ON u.nombre = b.usuario_que_bloquea " +
+                "JOIN usuarios v ON v.nombre = b.usuario_bloqueado");
+        stmt.execute("INSERT INTO estadisticas_gato (id, jugador_id, victorias, empates, derrotas, puntos) " +
+                "SELECT e.id, u.id, e.victorias, e.empates, e.derrotas, e.puntos FROM estadisticas_gato_texto e " +
+                "JOIN usuarios u ON u.nombre = e.jugador");
+        stmt.execute("INSERT INTO historial_partidas (id, jugador1_id, jugador2_id, ganador_id, fecha_partida) " +
+                "SELECT h.id, u.id, v.id, g.id, h.fecha_partida FROM historial_partidas_texto h " +
+                "JOIN usuarios u ON u.nombre = h.jugador1 " +
+                "JOIN usuarios v ON v.nombre = h.jugador2 " +
+                "LEFT JOIN usuarios g ON g.nombre = h.ganador");
+        stmt.execute("INSERT INTO miembros_grupo (id, grupo_id, usuario_id, fecha_union) " +
+                "SELECT m.id, g.id, u.id, m.fecha_union FROM miembros_grupo_texto m " +
+                "JOIN grupos g ON g.nombre = m.grupo_nombre " +
+                "JOIN usuarios u ON u.nombre = m.usuario");
+        stmt.execute("INSERT INTO mensajes_grupo (id, grupo_id, remitente_id, mensaje, fecha_envio) " +
+                "SELECT m.id, g.id, u.id, m.mensaje, m.fecha_envio FROM mensajes_grupo_texto m " +
+                "JOIN grupos g ON g.nombre = m.grupo_nombre " +
+                "JOIN usuarios u ON u.nombre = m.remitente");
+        stmt.execute("INSERT INTO mensajes_leidos (id, usuario_id, grupo_id, ultimo_mensaje_id) " +
+                "SELECT l.id, u.id, g.id, l.ultimo_mensaje_id FROM mensajes_leidos_texto l " +
+                "JOIN usuarios u ON u.nombre = l.usuario " +
+                "JOIN grupos g ON g.nombre = l.grupo_nombre");
+        
+        for (String tabla : TABLAS_CON_NOMBRES) {
+            stmt.execute("DROP TABLE " + tabla + "_texto");
+        }
+        System.out.println("Base de datos migrada a ids enteros");
+    }
+
+    // ==================== PASO 2 ====================
+
+    // Conteo de no leídos: grupo y rango de id, sin tocar la tabla. Enfrentamientos: cada lado
+    // del OR es una búsqueda por (jugador1, jugador2) que ya trae al ganador. Mis grupos: los
+    // del usuario sin recorrer miembros_grupo (su UNIQUE empieza por grupo_id).
+    private static void indices(PoolConexiones.Conexion conn, Statement stmt) throws SQLException {
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_mensajes_grupo_grupo_id " +
+                "ON mensajes_grupo (grupo_id, id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_historial_jugadores " +
+                "ON historial_partidas (jugador1_id, jugador2_id, ganador_id)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_miembros_grupo_usuario " +
+                "ON miembros_grupo (usuario_id, grupo_id)");
+    }
+}
@@ -1,24 +1,32 @@
 package com.mycompany.servidormulti;
 
+// Los jugadores se comparan por id; los nombres solo se guardan para mostrarlos.
 public class PartidaGato {
+    public static final String EMPATE = "EMPATE";
+    
+    private final int idJugador1;
+    private final int idJugador2;
     private final String jugador1;
     private final String jugador2;
     private final char simboloJ1;
     private final char simboloJ2;
-    private String turnoActual;
+    private volatile int idTurno;
     private char[][] tablero;
-    private boolean terminado;
-    private String ganador;
+    private volatile boolean terminado;
+    // 0 mientras se juega y también si terminó en empate.
+    private volatile int idGanador;
     
-    public PartidaGato(String jugador1, String jugador2, boolean empiezaJ1) {
+    public PartidaGato(int idJugador1, String jugador1, int idJugador2, String jugador2, boolean empiezaJ1) {
+        this.idJugador1 = idJugador1;
+        this.idJugador2 = idJugador2;
         this.jugador1 = jugador1;
         this.jugador2 = jugador2;
         this.simboloJ1 = 'X';
         this.simboloJ2 = 'O';
-        this.turnoActual = empiezaJ1 ? jugador1 : jugador2;
+        this.idTurno = empiezaJ1 ? idJugador1 : idJugador2;
         this.tablero = new char[3][3];
         this.terminado = false;
-        this.ganador = null;
+        this.idGanador = 0;
         inicializarTablero();
     }
     
@@ -39,25 +47,53 @@ public class PartidaGato {
         return jugador2;
     }
     
+    public int getIdJugador1() {
+        return idJugador1;
+    }
+    
+    public int getIdJugador2() {
+        return idJugador2;
+    }
+    
+    public int getIdTurno() {
+        return idTurno;
+    }
+    
     public String getTurnoActual() {
-        return turnoActual;
+        return nombreDe(idTurno);
     }
     
-    public boolean esJugadorEnPartida(String jugador) {
-        return jugador.equals(jugador1) || jugador.equals(jugador2);
+    public boolean esJugadorEnPartida(int idJugador) {
+        return idJugador == idJugador1 || idJugador == idJugador2;
     }
     
     public boolean isTerminado() {
         return terminado;
     }
     
+    public int getIdGanador() {
+        return idGanador;
+    }
+    
+    // Nombre del ganador o EMPATE; null si todavía no termina.
     public String getGanador() {
-        return ganador;
+        if (!terminado) return null;
+        return idGanador == 0 ? EMPATE : nombreDe(idGanador);
+    }
+    
+    public int getIdOponente(int idJugador) {
+        if (idJugador == idJugador1) return idJugador2;
+        if (idJugador == idJugador2) return idJugador1;
+        return 0;
+    }
+    
+    public String getOponente(int idJugador) {
+        return nombreDe(getIdOponente(idJugador));
     }
     
-    public String getOponente(String jugador) {
-        if (jugador.equals(jugador1)) return jugador2;
-        if (jugador.equals(jugador2)) return jugador1;
+    private String nombreDe(int idJugador) {
+        if (idJugador == idJugador1) return jugador1;
+        if (idJugador == idJugador2) return jugador2;
         return null;
     }
     
@@ -76,23 +112,22 @@ public class PartidaGato {
         return sb.toString();
     }
     
-    public synchronized boolean realizarMovimiento(String jugador, int fila, int columna) {
+    public synchronized boolean realizarMovimiento(int idJugador, int fila, int columna) {
         if (terminado) return false;
-        if (!jugador.equals(turnoActual)) return false;
+        if (idJugador != idTurno) return false;
         if (fila < 0 || fila > 2 || columna < 0 || columna > 2) return false;
         if (tablero[fila][columna] != '-') return false;
         
-        char simbolo = jugador.equals(jugador1) ? simboloJ1 : simboloJ2;
+        char simbolo = idJugador == idJugador1 ? simboloJ1 : simboloJ2;
         tablero[fila][columna] = simbolo;
         
         if (verificarGanador(simbolo)) {
+            idGanador = idJugador;
             terminado = true;
-            ganador = jugador;
         } else if (tableroLleno()) {
             terminado = true;
-            ganador = "EMPATE";
         } else {
-            turnoActual = jugador.equals(jugador1) ? jugador2 : jugador1;
+            idTurno = idJugador == idJugador1 ? idJugador2 : idJugador1;
         }
         
         return true;
@@ -135,14 +170,14 @@ public class PartidaGato {
         return true;
     }
     
-    public void abandonar(String jugador) {
+    public synchronized void abandonar(int idJugador) {
+        idGanador = getIdOponente(idJugador);
         terminado = true;
-        ganador = getOponente(jugador);
     }
     
-    public char getSimbolo(String jugador) {
-        if (jugador.equals(jugador1)) return simboloJ1;
-        if (jugador.equals(jugador2)) return simboloJ2;
+    public char getSimbolo(int idJugador) {
+        if (idJugador == idJugador1) return simboloJ1;
+        if (idJugador == idJugador2) return simboloJ2;
         return ' ';
     }
 }
@@ -0,0 +1,204 @@
+package com.mycompany.servidormulti;
+
+import java.io.Serial;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Conexiones SQLite que duran lo que dura el servidor. Abrir el archivo y compilar el SQL en
+// cada operación costaba más que la operación; aquí cada conexión se abre una vez (la primera
+// vez que hace falta) y guarda sus sentencias preparadas, indexadas por el texto del SQL. Las
+// consultas de BaseDatos son fijas, así que tras el arranque casi todo es acierto.
+//
+// Una conexión la usa un solo hilo a la vez: se toma con tomar() y se devuelve con close()
+// (try-with-resources). Las sentencias de la caché no se cierran; sus ResultSet sí.
+public class PoolConexiones {
+    private static final long ESPERA_MAXIMA_MS = 30000;
+    private static final int SENTENCIAS_POR_CONEXION = 64;
+
+    private static final LongAdder TOMAS = Metricas.contador("bd.pool.tomas");
+    private static final LongAdder ESPERAS = Metricas.contador("bd.pool.esperas");
+    private static final LongAdder ESPERA_US = Metricas.contador("bd.pool.espera_us");
+    private static final LongAdder ACIERTOS = Metricas.contador("bd.sentencias.aciertos");
+    private static final LongAdder FALLOS = Metricas.contador("bd.sentencias.fallos");
+
+    private final String url;
+    private final Properties propiedades;
+    private final int tamano;
+    private final ArrayBlockingQueue<Conexion> libres;
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private volatile boolean cerrado;
+
+    public PoolConexiones(String url, Properties propiedades, int tamano) {
+        this.url = url;
+        this.propiedades = propiedades;
+        this.tamano = Math.max(1, tamano);
+        this.libres = new ArrayBlockingQueue<>(this.tamano);
+        Metricas.registrarIndicador("bd.pool.abiertas", abiertas::get);
+        Metricas.registrarIndicador("bd.pool.libres", libres::size);
+        Metricas.registrarIndicador("bd.sentencias.aciertos_pct", PoolConexiones::porcentajeAciertos);
+    }
+
+    private static long porcentajeAciertos() {
+        long aciertos = ACIERTOS.sum();
+        long total = aciertos + FALLOS.sum();
+        return total == 0 ? 0 : aciertos * 100 / total;
+    }
+
+    // Una libre si la hay; si no, abre otra mientras no se llegue al tamaño; si no, espera.
+    public Conexion tomar() throws SQLException {
+        if (cerrado) throw new SQLException("El pool de conexiones está cerrado");
+        TOMAS.increment();
+        Conexion conexion = libres.poll();
+        if (conexion != null) return conexion;
+
+        if (abiertas.incrementAndGet() <= tamano) {
+            try {
+                return new Conexion(DriverManager.getConnection(url, propiedades));
+            } catch (SQLException e) {
+                abiertas.decrementAndGet();
+                throw e;
+            }
+        }
+        abiertas.decrementAndGet();
+
+        ESPERAS.increment();
+        long inicio = System.nanoTime();
+        try {
+            conexion = libres.poll(ESPERA_MAXIMA_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión", e);
+        } finally {
+            ESPERA_US.add((System.nanoTime() - inicio) / 1000);
+        }
+        if (conexion == null) throw new SQLException("No hubo conexión libre en " + ESPERA_MAXIMA_MS + " ms");
+        return conexion;
+    }
+
+    private void devolver(Conexion conexion) {
+        if (cerrado || !conexion.restablecer() || !libres.offer(conexion)) {
+            conexion.cerrarFisica();
+            abiertas.decrementAndGet();
+        }
+    }
+
+    // Las que están en uso se cierran al devolverse.
+    public void cerrar() {
+        cerrado = true;
+        Conexion conexion;
+        while ((conexion = libres.poll()) != null) {
+            conexion.cerrarFisica();
+            abiertas.decrementAndGet();
+        }
+    }
+
+    public final class Conexion implements AutoCloseable {
+        private final Connection jdbc;
+        private final Map<String, PreparedStatement> sentencias = new Cache();
+        private final Map<String, PreparedStatement> conClaves = new Cache();
+
+        private Conexion(Connection jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        public PreparedStatement preparar(String sql) throws SQLException {
+            return buscar(sentencias, sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        // Para los INSERT cuyo id generado se lee con getGeneratedKeys().
+        public PreparedStatement prepararConClaves(String sql) throws SQLException {
+            return buscar(conClaves, sql, Statement.RETURN_GENERATED_KEYS);
+        }
+
+        private PreparedStatement buscar(Map<String, PreparedStatement> cache, String sql, int claves) throws SQLException {
+            PreparedStatement sentencia = cache.get(sql);
+            if (sentencia != null) {
+                ACIERTOS.increment();
+                return sentencia;
+            }
+            FALLOS.increment();
+            sentencia = jdbc.prepareStatement(sql, claves);
+            cache.put(sql, sentencia);
+            return sentencia;
+        }
+
+        // Para el SQL que no se repite (esquema, migraciones, cargas al arrancar).
+        public Statement crearSentencia() throws SQLException {
+            return jdbc.createStatement();
+        }
+
+        public Connection jdbc() {
+            return jdbc;
+        }
+
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            jdbc.setAutoCommit(autoCommit);
+        }
+
+        public void commit() throws SQLException {
+            jdbc.commit();
+        }
+
+        public void rollback() throws SQLException {
+            jdbc.rollback();
+        }
+
+        @Override
+        public void close() {
+            devolver(this);
+        }
+
+        // Una transacción que quedó abierta por un error se deshace antes de prestar la
+        // conexión a otro; si ni eso se puede, la conexión se descarta.
+        private boolean restablecer() {
+            try {
+                if (!jdbc.getAutoCommit()) {
+                    jdbc.rollback();
+                    jdbc.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void cerrarFisica() {
+            try {
+                jdbc.close();
+            } catch (SQLException e) {
+                System.err.println("Error cerrando conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    // Las consultas son fijas; el tope solo protege de SQL armado con datos del usuario.
+    private static final class Cache extends LinkedHashMap<String, PreparedStatement> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Cache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> antigua) {
+            if (size() <= SENTENCIAS_POR_CONEXION) return false;
+            try {
+                antigua.getValue().close();
+            } catch (SQLException e) {
+                // Se descarta de todas formas.
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.mycompany.servidormulti;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Protocolo binario v2. El cliente lo pide enviando SALUDO como su primer writeUTF; el
+// servidor responde SALUDO_OK con el formato viejo y desde ahí ambos lados usan tramas
+//   [u32 longitud][u8 código][u32 id de solicitud][campos]
+// donde cada campo de texto va como writeUTF (u16 + UTF-8 modificado). Cada solicitud se
+// contesta con cero o más LINEA con su mismo id y un FIN. Los avisos sin solicitud usan id 0.
+public final class ProtocoloV2 {
+    public static final String SALUDO = "@@protocolo 2";
+    public static final String SALUDO_OK = "@@protocolo 2 ok";
+    static final byte[] TRAMA_SALUDO = tramaLegada(SALUDO);
+
+    public static final int CABECERA = 1 + 4;
+    public static final int TAMANO_MAXIMO = 1 << 20;
+
+    // Cliente -> servidor
+    public static final int TEXTO = 0x01;
+    public static final int MENSAJE = 0x02;
+    public static final int PRIVADO = 0x03;
+    public static final int REGISTRAR = 0x04;
+    public static final int INICIAR = 0x05;
+    public static final int SALIR = 0x06;
+    public static final int COMPRIMIR = 0x07;
+    public static final int PONG = 0x08;
+    public static final int CREAR_GRUPO = 0x10;
+    public static final int ELIMINAR_GRUPO = 0x11;
+    public static final int UNIRSE = 0x12;
+    public static final int SALIR_GRUPO = 0x13;
+    public static final int CAMBIAR_GRUPO = 0x14;
+    public static final int MIEMBROS = 0x15;
+    public static final int BLOQUEAR = 0x20;
+    public static final int DESBLOQUEAR = 0x21;
+    public static final int INVITAR = 0x30;
+    public static final int ACEPTAR = 0x31;
+    public static final int RECHAZAR = 0x32;
+    public static final int MOVER = 0x33;
+    public static final int RENDIRSE = 0x34;
+    public static final int VS = 0x35;
+
+    // Servidor -> cliente
+    public static final int LINEA = 0x80;
+    public static final int FIN = 0x81;
+    public static final int PING = 0x82;
+
+    private ProtocoloV2() {
+    }
+
+    private static byte[] tramaLegada(String texto) {
+        byte[] utf = texto.getBytes(StandardCharsets.UTF_8);
+        byte[] trama = new byte[2 + utf.length];
+        trama[0] = (byte) (utf.length >>> 8);
+        trama[1] = (byte) utf.length;
+        System.arraycopy(utf, 0, trama, 2, utf.length);
+        return trama;
+    }
+
+    static void escribirCabecera(byte[] destino, int offset, int longitudCampos, int codigo, int id) {
+        int longitud = CABECERA + longitudCampos;
+        destino[offset] = (byte) (longitud >>> 24);
+        destino[offset + 1] = (byte) (longitud >>> 16);
+        destino[offset + 2] = (byte) (longitud >>> 8);
+        destino[offset + 3] = (byte) longitud;
+        destino[offset + 4] = (byte) codigo;
+        destino[offset + 5] = (byte) (id >>> 24);
+        destino[offset + 6] = (byte) (id >>> 16);
+        destino[offset + 7] = (byte) (id >>> 8);
+        destino[offset + 8] = (byte) id;
+    }
+
+    static byte[] tramaSinCampos(int codigo) {
+        byte[] trama = new byte[4 + CABECERA];
+        escribirCabecera(trama, 0, 0, codigo, 0);
+        return trama;
+    }
+
+    public static Solicitud leer(DataInputStream entrada) throws IOException {
+        int longitud = entrada.readInt();
+        if (longitud < CABECERA || longitud > TAMANO_MAXIMO) {
+            throw new IOException("Trama v2 inválida: " + longitud + " bytes");
+        }
+        int codigo = entrada.readUnsignedByte();
+        int id = entrada.readInt();
+        byte[] campos = new byte[longitud - CABECERA];
+        entrada.readFully(campos);
+        return new Solicitud(codigo, id, campos);
+    }
+
+    // Codifica una trama completa; los campos String van como writeUTF y los Integer como u8.
+    public static byte[] codificar(int codigo, int id, Object... campos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream datos = new DataOutputStream(bytes);
+        datos.writeInt(0);
+        datos.writeByte(codigo);
+        datos.writeInt(id);
+        for (Object campo : campos) {
+            if (campo instanceof Integer) {
+                datos.writeByte((Integer) campo);
+            } else {
+                datos.writeUTF(String.valueOf(campo));
+            }
+        }
+        byte[] trama = bytes.toByteArray();
+        int longitud = trama.length - 4;
+        trama[0] = (byte) (longitud >>> 24);
+        trama[1] = (byte) (longitud >>> 16);
+        trama[2] = (byte) (longitud >>> 8);
+        trama[3] = (byte) longitud;
+        return trama;
+    }
+
+    public static final class Solicitud {
+        public final int codigo;
+        public final int id;
+        private final byte[] campos;
+        private DataInputStream lector;
+
+        Solicitud(int codigo, int id, byte[] campos) {
+            this.codigo = codigo;
+            this.id = id;
+            this.campos = campos;
+        }
+
+        // El lector se crea hasta que se pide un campo; las solicitudes sin texto no lo necesitan.
+        private DataInputStream lector() {
+            if (lector == null) lector = new DataInputStream(new ByteArrayInputStream(campos));
+            return lector;
+        }
+
+        public String leerTexto() throws IOException {
+            return lector().readUTF();
+        }
+
+        public int leerByte() throws IOException {
+            return lector().readUnsignedByte();
+        }
+
+        // Lectura directa de un campo u8 por su posición, sin pasar por el lector.
+        public int byteEn(int posicion) {
+            return campos[posicion] & 0xFF;
+        }
+
+        public int longitudCampos() {
+            return campos.length;
+        }
+    }
+}
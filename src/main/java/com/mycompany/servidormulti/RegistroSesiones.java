@@ -0,0 +1,139 @@
+package com.mycompany.servidormulti;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Sesiones conectadas y usuarios registrados. Todo va sobre ConcurrentHashMap: las búsquedas
+// no toman cerrojos y los recorridos ven una vista consistente sin frenar a nadie (pueden
+// incluir o no los cambios que ocurran mientras tanto). Reclamar un nombre es un putIfAbsent,
+// así dos sesiones nunca quedan con el mismo nombre aunque inicien sesión al mismo tiempo.
+//
+// Cada usuario registrado tiene además un id entero denso (el id de la tabla usuarios), que
+// se asigna aquí al cargar o registrar. Lo que se consulta por cada destinatario (quién está
+// conectado, bloqueos, partidas) va por id en arreglos; el nombre queda para mostrar y para
+// lo que escribe el usuario. Los invitados no tienen id (0) y solo están en el mapa por nombre.
+public class RegistroSesiones {
+    private final ConcurrentHashMap<String, UnCliente> conectados = new ConcurrentHashMap<>();
+    private final ArregloPorId<UnCliente> conectadosPorId = new ArregloPorId<>();
+    private final ConcurrentHashMap<String, BaseDatos.Usuario> usuarios = new ConcurrentHashMap<>();
+    private final ArregloPorId<BaseDatos.Usuario> usuariosPorId = new ArregloPorId<>();
+    // Registrar es raro; con el cerrojo los ids salen seguidos y sin huecos.
+    private final ReentrantLock cerrojoRegistro = new ReentrantLock();
+    private int ultimoId;
+
+    public RegistroSesiones() {
+        Metricas.registrarIndicador("sesiones.conectadas", conectados::size);
+    }
+
+    public UnCliente obtener(String nombre) {
+        return conectados.get(nombre);
+    }
+
+    public UnCliente obtener(int id) {
+        return id > 0 ? conectadosPorId.obtener(id) : null;
+    }
+
+    public boolean estaConectado(String nombre) {
+        return conectados.containsKey(nombre);
+    }
+
+    public Collection<UnCliente> conectados() {
+        return conectados.values();
+    }
+
+    public Set<String> nombresConectados() {
+        return conectados.keySet();
+    }
+
+    // Nombre de invitado único: si otro entró en el mismo milisegundo se prueba el siguiente.
+    public String registrarInvitado(String prefijo, UnCliente cliente) {
+        long sufijo = System.currentTimeMillis();
+        while (conectados.putIfAbsent(prefijo + sufijo, cliente) != null) {
+            sufijo++;
+        }
+        return prefijo + sufijo;
+    }
+
+    // Primero se reclama el nombre nuevo y después se suelta el anterior, así la sesión nunca
+    // queda sin nombre. Falla si otra sesión ya tiene el nuevo.
+    public boolean renombrar(String anterior, String nuevo, UnCliente cliente) {
+        if (conectados.putIfAbsent(nuevo, cliente) != null) return false;
+        int id = idDe(nuevo);
+        if (id > 0) conectadosPorId.poner(id, cliente);
+        if (anterior != null) quitar(anterior, cliente);
+        return true;
+    }
+
+    // Solo quita la entrada si sigue siendo de esta sesión.
+    public void quitar(String nombre, UnCliente cliente) {
+        if (!conectados.remove(nombre, cliente)) return;
+        int id = idDe(nombre);
+        if (id > 0) conectadosPorId.quitar(id, cliente);
+    }
+
+    public void cargarUsuarios(List<BaseDatos.Usuario> registrados) {
+        cerrojoRegistro.lock();
+        try {
+            for (BaseDatos.Usuario usuario : registrados) {
+                usuarios.put(usuario.nombre, usuario);
+                usuariosPorId.poner(usuario.id, usuario);
+                ultimoId = Math.max(ultimoId, usuario.id);
+            }
+        } finally {
+            cerrojoRegistro.unlock();
+        }
+    }
+
+    // Regresa el usuario nuevo con su id, o null si el nombre ya estaba registrado.
+    public BaseDatos.Usuario registrarUsuario(String nombre, String password) {
+        cerrojoRegistro.lock();
+        try {
+            if (usuarios.containsKey(nombre)) return null;
+            BaseDatos.Usuario usuario = new BaseDatos.Usuario(ultimoId + 1, nombre, password);
+            ultimoId = usuario.id;
+            usuariosPorId.poner(usuario.id, usuario);
+            usuarios.put(nombre, usuario);
+            return usuario;
+        } finally {
+            cerrojoRegistro.unlock();
+        }
+    }
+
+    // Deshace registrarUsuario cuando la base no lo guardó. Su id no se vuelve a dar: si falló
+    // por chocar con una fila que ya estaba, volvería a fallar; un hueco no estorba.
+    public void anularRegistro(BaseDatos.Usuario usuario) {
+        usuarios.remove(usuario.nombre, usuario);
+        usuariosPorId.quitar(usuario.id, usuario);
+    }
+
+    // 0 si no es un usuario registrado.
+    public int idDe(String nombre) {
+        BaseDatos.Usuario usuario = usuarios.get(nombre);
+        return usuario == null ? 0 : usuario.id;
+    }
+
+    public String nombreDe(int id) {
+        BaseDatos.Usuario usuario = id > 0 ? usuariosPorId.obtener(id) : null;
+        return usuario == null ? null : usuario.nombre;
+    }
+
+    public boolean existeUsuario(String nombre) {
+        return usuarios.containsKey(nombre);
+    }
+
+    public boolean autenticar(String nombre, String password) {
+        BaseDatos.Usuario usuario = usuarios.get(nombre);
+        return usuario != null && usuario.password.equals(password);
+    }
+
+    public Set<String> nombresUsuarios() {
+        return usuarios.keySet();
+    }
+
+    public int totalUsuarios() {
+        return usuarios.size();
+    }
+}
@@ -0,0 +1,139 @@
+package com.mycompany.servidormulti;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rueda de tiempo con ranuras: todos los temporizadores del servidor (latidos, vencimientos)
+// comparten un solo hilo. Programar y cancelar cuestan O(1) sin importar cuántas sesiones
+// haya, y en cada tic solo se recorre la ranura que toca. Un temporizador cancelado se quita
+// cuando su ranura pasa. Las tareas corren en el hilo de la rueda, así que deben ser cortas.
+public final class RuedaTemporizadores {
+    private static final RuedaTemporizadores GLOBAL = new RuedaTemporizadores(
+            Long.getLong("chat.rueda.tic", 100), Integer.getInteger("chat.rueda.ranuras", 512));
+
+    static {
+        Metricas.registrarIndicador("rueda.temporizadores", GLOBAL::getPendientes);
+    }
+
+    private final long nanosPorTic;
+    private final int mascara;
+    private final Temporizador[] ranuras;
+    private final ConcurrentLinkedQueue<Temporizador> nuevos = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendientes = new AtomicInteger();
+    private final long inicio;
+    private long tic;
+
+    public RuedaTemporizadores(long milisPorTic, int ranuras) {
+        int tamano = Integer.highestOneBit(Math.max(1, ranuras - 1)) << 1;
+        this.nanosPorTic = TimeUnit.MILLISECONDS.toNanos(Math.max(1, milisPorTic));
+        this.mascara = tamano - 1;
+        this.ranuras = new Temporizador[tamano];
+        this.inicio = System.nanoTime();
+
+        Thread hilo = new Thread(this::ejecutar, "rueda-temporizadores");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    public static RuedaTemporizadores global() {
+        return GLOBAL;
+    }
+
+    public Temporizador programar(long retraso, TimeUnit unidad, Runnable tarea) {
+        Temporizador temporizador = new Temporizador(tarea, System.nanoTime() + unidad.toNanos(retraso));
+        pendientes.incrementAndGet();
+        nuevos.add(temporizador);
+        return temporizador;
+    }
+
+    public int getPendientes() {
+        return pendientes.get();
+    }
+
+    private void ejecutar() {
+        while (true) {
+            long siguiente = inicio + (tic + 1) * nanosPorTic;
+            long espera = siguiente - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            ubicarNuevos();
+            vencerRanura(ranuras[(int) (tic & mascara)]);
+            tic++;
+        }
+    }
+
+    private void ubicarNuevos() {
+        Temporizador temporizador;
+        while ((temporizador = nuevos.poll()) != null) {
+            if (temporizador.cancelado) {
+                pendientes.decrementAndGet();
+                continue;
+            }
+            long destino = Math.max(tic, (temporizador.vence - inicio) / nanosPorTic);
+            temporizador.vueltas = (destino - tic) / ranuras.length;
+            int indice = (int) (destino & mascara);
+            temporizador.siguiente = ranuras[indice];
+            if (ranuras[indice] != null) ranuras[indice].anterior = temporizador;
+            ranuras[indice] = temporizador;
+            temporizador.indice = indice;
+        }
+    }
+
+    private void vencerRanura(Temporizador temporizador) {
+        while (temporizador != null) {
+            Temporizador siguiente = temporizador.siguiente;
+            if (temporizador.cancelado) {
+                quitar(temporizador);
+            } else if (temporizador.vueltas > 0) {
+                temporizador.vueltas--;
+            } else {
+                quitar(temporizador);
+                try {
+                    temporizador.tarea.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            temporizador = siguiente;
+        }
+    }
+
+    private void quitar(Temporizador temporizador) {
+        if (temporizador.anterior != null) {
+            temporizador.anterior.siguiente = temporizador.siguiente;
+        } else {
+            ranuras[temporizador.indice] = temporizador.siguiente;
+        }
+        if (temporizador.siguiente != null) {
+            temporizador.siguiente.anterior = temporizador.anterior;
+        }
+        temporizador.anterior = null;
+        temporizador.siguiente = null;
+        pendientes.decrementAndGet();
+    }
+
+    public static final class Temporizador {
+        private final Runnable tarea;
+        private final long vence;
+        private volatile boolean cancelado;
+        private long vueltas;
+        private int indice;
+        private Temporizador anterior;
+        private Temporizador siguiente;
+
+        private Temporizador(Runnable tarea, long vence) {
+            this.tarea = tarea;
+            this.vence = vence;
+        }
+
+        public void cancelar() {
+            cancelado = true;
+        }
+    }
+}
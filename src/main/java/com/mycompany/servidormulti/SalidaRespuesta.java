@@ -0,0 +1,120 @@
+package com.mycompany.servidormulti;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// Acumula todas las tramas que produce un comando y las pasa a la ColaSalida como un solo
+// bloque al terminar, para que la respuesta salga en una escritura en lugar de una por línea.
+// Si el bloque supera el límite se envía antes de tiempo. Cuando el cliente ya mandó más
+// solicitudes encadenadas, el bloque sigue abierto y acumula también sus respuestas.
+// Solo la usa el hilo de su cliente.
+public class SalidaRespuesta extends OutputStream {
+    private static final int LIMITE = Integer.getInteger("chat.respuesta.limite", 16 * 1024);
+
+    private static final LongAdder TRAMAS = Metricas.contador("respuesta.tramas");
+    private static final LongAdder ENVIOS = Metricas.contador("respuesta.envios");
+    private static final LongAdder ENVIOS_AHORRADOS = Metricas.contador("respuesta.envios_ahorrados");
+    private static final LongAdder ENCADENADAS = Metricas.contador("respuesta.solicitudes_encadenadas");
+
+    private final ColaSalida cola;
+    private byte[] buffer = new byte[512];
+    private int tamano;
+    private int tramasComando;
+    private int enviosComando;
+    private boolean protocoloV2;
+    private int solicitud;
+
+    public SalidaRespuesta(ColaSalida cola) {
+        this.cola = cola;
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    // DataOutputStream.writeUTF escribe cada trama con una sola llamada. En v2 la trama
+    // writeUTF pasa a ser el campo de una LINEA con el id de la solicitud en curso.
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int cabecera = protocoloV2 ? 4 + ProtocoloV2.CABECERA : 0;
+        reservar(cabecera + len);
+        if (protocoloV2) {
+            ProtocoloV2.escribirCabecera(buffer, tamano, len, ProtocoloV2.LINEA, solicitud);
+        }
+        System.arraycopy(b, off, buffer, tamano + cabecera, len);
+        tamano += cabecera + len;
+        tramasComando++;
+    }
+
+    private void reservar(int len) {
+        if (tamano > 0 && tamano + len > LIMITE) {
+            vaciar();
+        }
+        if (tamano + len > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, tamano + len));
+        }
+    }
+
+    void usarProtocoloV2() {
+        protocoloV2 = true;
+    }
+
+    void iniciarSolicitud(int id) {
+        solicitud = id;
+    }
+
+    // Cierra la solicitud v2 en curso con su FIN; el cliente ya puede dar por completa la respuesta.
+    void terminarSolicitud() {
+        if (!protocoloV2) return;
+        reservar(4 + ProtocoloV2.CABECERA);
+        ProtocoloV2.escribirCabecera(buffer, tamano, 0, ProtocoloV2.FIN, solicitud);
+        tamano += 4 + ProtocoloV2.CABECERA;
+        solicitud = 0;
+    }
+
+    // Límite explícito: antes de esperar una respuesta del usuario y al final de cada comando.
+    @Override
+    public void flush() {
+        vaciar();
+    }
+
+    private void vaciar() {
+        if (tamano == 0) return;
+        cola.encolar(ByteBuffer.wrap(Arrays.copyOf(buffer, tamano)));
+        tamano = 0;
+        enviosComando++;
+        if (buffer.length > LIMITE) {
+            buffer = new byte[512];
+        }
+    }
+
+    // Contador de envíos ahorrados de un comando; quien llama lo resuelve una vez y lo guarda.
+    static LongAdder ahorradosPor(String comando) {
+        return Metricas.contador("respuesta.envios_ahorrados." + comando);
+    }
+
+    public void terminarComando(LongAdder ahorradosComando) {
+        terminarComando(ahorradosComando, false);
+    }
+
+    public void terminarComando(LongAdder ahorradosComando, boolean hayMasSolicitudes) {
+        terminarSolicitud();
+        if (hayMasSolicitudes) {
+            ENCADENADAS.increment();
+        } else {
+            vaciar();
+        }
+        if (tramasComando > 0) {
+            int ahorrados = tramasComando - enviosComando;
+            TRAMAS.add(tramasComando);
+            ENVIOS.add(enviosComando);
+            ENVIOS_AHORRADOS.add(ahorrados);
+            ahorradosComando.add(ahorrados);
+        }
+        tramasComando = 0;
+        enviosComando = 0;
+    }
+}
@@ -1,229 +1,421 @@
 package com.mycompany.servidormulti;
 import com.mycompany.servidormulti.BaseDatos;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.sql.*;
-
-public class ServidorMulti {
-    static java.util.HashMap<String, UnCliente> clientes = new java.util.HashMap<>();
-    static java.util.HashMap<String, String> usuarios = new java.util.HashMap<>();
-    static java.util.HashMap<String, PartidaGato> partidasActivas = new java.util.HashMap<>();
-    static java.util.HashMap<String, String> invitacionesPendientes = new java.util.HashMap<>();
-    static final String DB_URL = "jdbc:sqlite:chat.db";
-    static BaseDatos bd;
-    
-    public static void main(String[] args) {
-        int puerto = 8080;
-        
-        bd = new BaseDatos();
-        bd.inicializar();
-        cargarUsuariosDelBD();
-        
-        try (ServerSocket servidorSocket = new ServerSocket(puerto)) {
-            System.out.println("Servidor iniciado en el puerto " + puerto);
-            System.out.println("Sistema de autenticación activado: 3 mensajes gratuitos");
-            System.out.println("Sistema de bloqueo activado");
-            System.out.println("Sistema de juego Gato activado");
-            System.out.println("Sistema de ranking activado");
-            System.out.println("Sistema de grupos activado");
-            System.out.println("Usuarios cargados: " + usuarios.size());
-            
-            while (true) {
-                Socket socket = servidorSocket.accept();
-                UnCliente unCliente = new UnCliente(socket);
-                Thread hilo = new Thread(unCliente);
-                hilo.start();
-            }
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Un servidor completo: su base, sus sesiones, sus grupos y su socket. Todo el estado vive en
+// la instancia, así en una misma JVM pueden correr varios (pruebas, mediciones) cada uno con
+// su puerto y su archivo de base. Se usa con try-with-resources:
+//
+//     try (ServidorMulti servidor = new ServidorMulti(configuracion).iniciar()) {
+//         int puerto = servidor.getPuerto();
+//         ...
+//     }
+//
+// Las métricas siguen siendo globales: los contadores suman lo de todas las instancias y un
+// indicador registrado con el mismo nombre queda con el de la última que arrancó.
+public class ServidorMulti implements AutoCloseable {
+    private static final int ESPERA_CIERRE_SEGUNDOS = 5;
+
+    final RegistroSesiones sesiones = new RegistroSesiones();
+    final DirectorioPartidas partidas = new DirectorioPartidas(sesiones);
+    final GestorInvitaciones invitaciones = new GestorInvitaciones();
+    final TablaBloqueos bloqueos = new TablaBloqueos();
+    final ControlAdmision admision = new ControlAdmision();
+    final BaseDatos bd;
+    final MarcasLeido marcas;
+    GrupoManager grupos;
+
+    private final Configuracion configuracion;
+    private final ExecutorService tareasGrupos;
+    // Todas las sesiones vivas, también las que aún no tienen nombre, para cerrarlas al detener.
+    private final Set<UnCliente> clientes = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock cerrojoClientes = new ReentrantLock();
+    private final Condition sinClientes = cerrojoClientes.newCondition();
+    private ServerSocket servidorSocket;
+    private ServidorNIO servidorNIO;
+    private Thread aceptador;
+    private volatile boolean detenido;
+
+    public ServidorMulti(Configuracion configuracion) {
+        this.configuracion = configuracion;
+        this.bd = new BaseDatos(configuracion.rutaBD, configuracion.conexionesBD);
+        this.marcas = new MarcasLeido(bd);
+        this.tareasGrupos = configuracion.hilosVirtuales
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Metricas.iniciarVolcadoPeriodico(Integer.getInteger("chat.metricas.intervalo", 0));
+        try (ServidorMulti servidor = new ServidorMulti(Configuracion.desdePropiedades())) {
+            servidor.iniciar();
+            servidor.esperar();
         } catch (IOException e) {
             System.out.println("Error en el servidor: " + e.getMessage());
         }
     }
-    
-    public static synchronized boolean nombreDisponible(String nombre) {
-        return !clientes.containsKey(nombre);
-    }
-    
-    public static synchronized void registrarCliente(String nombre, UnCliente cliente) {
-        clientes.put(nombre, cliente);
+
+    // Carga la base, abre el puerto y empieza a aceptar en su propio hilo. Regresa en cuanto el
+    // puerto está abierto; getPuerto() da el puerto real aunque se haya pedido el 0. Si algo
+    // falla (p. ej. el puerto está ocupado) se cierra lo que ya arrancó antes de lanzar el
+    // error: con try-with-resources la variable nunca se asigna y close() no se llamaría.
+    public ServidorMulti iniciar() throws IOException {
+        try {
+            bd.inicializar();
+            cargarUsuariosDelBD();
+            grupos = new GrupoManager(bd, sesiones, marcas, tareasGrupos);
+            marcas.iniciar();
+            Metricas.registrarIndicador("invitaciones.pendientes", invitaciones::getPendientes);
+
+            if (configuracion.nio) {
+                servidorNIO = new ServidorNIO(this, Math.max(1, configuracion.hilosBucle), configuracion.hilosVirtuales);
+                servidorNIO.abrir(configuracion.puerto);
+                aceptador = new Thread(this::aceptarNIO, "aceptador-nio");
+            } else {
+                servidorSocket = new ServerSocket();
+                servidorSocket.bind(new InetSocketAddress(configuracion.puerto), ControlAdmision.BACKLOG);
+                aceptador = new Thread(this::aceptarBloqueante, "aceptador");
+            }
+            mostrarSistemasActivos(getPuerto());
+            aceptador.start();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        return this;
     }
-    
-    public static synchronized void registrarUsuario(String nombre, String password) {
-        usuarios.put(nombre, password);
-        bd.guardarUsuario(nombre, password);
-        System.out.println("Nuevo usuario registrado: " + nombre);
+
+    public int getPuerto() {
+        return servidorNIO != null ? servidorNIO.getPuerto() : servidorSocket.getLocalPort();
     }
-    
-    public static synchronized boolean autenticarUsuario(String nombre, String password) {
-        return usuarios.containsKey(nombre) && usuarios.get(nombre).equals(password);
+
+    // Bloquea hasta que el servidor deja de aceptar conexiones.
+    public void esperar() throws InterruptedException {
+        aceptador.join();
     }
-    
-    public static boolean bloquearUsuario(String usuarioActual, String usuarioABloquear) {
-        if (usuarioActual.equals(usuarioABloquear)) {
-            return false;
+
+    // Deja de aceptar, cierra las sesiones abiertas y espera a que terminen las tareas de los
+    // grupos; al final cierra las conexiones a la base. Se puede llamar más de una vez.
+    @Override
+    public void close() {
+        if (detenido) return;
+        detenido = true;
+        try {
+            if (servidorSocket != null) servidorSocket.close();
+            if (servidorNIO != null) servidorNIO.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        if (!usuarios.containsKey(usuarioABloquear)) {
-            return false;
+        try {
+            if (aceptador != null && aceptador != Thread.currentThread()) aceptador.join();
+            for (UnCliente cliente : clientes) {
+                cliente.cortarConexion();
+            }
+            esperarClientes();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return bd.bloquearUsuario(usuarioActual, usuarioABloquear);
+        if (servidorNIO != null) servidorNIO.detener();
+        // Un mensaje de grupo vuelve al buzón de su grupo cuando el escritor lo confirma; se
+        // espera a esas confirmaciones para que no lleguen con el ejecutor ya apagado.
+        bd.vaciarEscrituras();
+        detenerEjecutor(tareasGrupos);
+        marcas.detener();
+        bd.cerrar();
+        System.out.println("Servidor detenido");
     }
-    
-    public static boolean desbloquearUsuario(String usuarioActual, String usuarioADesbloquear) {
-        if (!usuarios.containsKey(usuarioADesbloquear)) {
-            return false; 
+
+    private static void detenerEjecutor(ExecutorService ejecutor) {
+        ejecutor.shutdown();
+        try {
+            if (!ejecutor.awaitTermination(ESPERA_CIERRE_SEGUNDOS, TimeUnit.SECONDS)) {
+                ejecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ejecutor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
-        return bd.desbloquearUsuario(usuarioActual, usuarioADesbloquear);
     }
-    
-    public static boolean estasBloqueado(String usuarioOrigen, String usuarioDestino) {
-        return bd.estaBloqueado(usuarioOrigen, usuarioDestino);
+
+    // Las desconexiones todavía usan los grupos y los trabajadores NIO, así que se apagan
+    // después de que la última sesión terminó (o venció la espera).
+    private void esperarClientes() throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(ESPERA_CIERRE_SEGUNDOS);
+        cerrojoClientes.lock();
+        try {
+            long restante;
+            while (!clientes.isEmpty() && (restante = limite - System.nanoTime()) > 0) {
+                sinClientes.awaitNanos(restante);
+            }
+        } finally {
+            cerrojoClientes.unlock();
+        }
     }
-    
-    public static java.util.List<String> obtenerBloqueados(String usuario) {
-        return bd.obtenerBloqueados(usuario);
+
+    void agregarCliente(UnCliente cliente) {
+        clientes.add(cliente);
     }
-    
-    private static void cargarUsuariosDelBD() {
-        usuarios = bd.cargarTodosLosUsuarios();
-        System.out.println("Usuarios cargados de la BD: " + usuarios.size());
+
+    void quitarCliente(UnCliente cliente) {
+        if (!clientes.remove(cliente) || !clientes.isEmpty()) return;
+        cerrojoClientes.lock();
+        try {
+            sinClientes.signalAll();
+        } finally {
+            cerrojoClientes.unlock();
+        }
     }
     
-   
-    public static boolean crearGrupo(String nombreGrupo, String creador) {
-        return bd.crearGrupo(nombreGrupo, creador);
+    private void mostrarSistemasActivos(int puerto) {
+        System.out.println("Servidor iniciado en el puerto " + puerto);
+        System.out.println("Sistema de autenticación activado: 3 mensajes gratuitos");
+        System.out.println("Sistema de bloqueo activado");
+        System.out.println("Sistema de juego Gato activado");
+        System.out.println("Sistema de ranking activado");
+        System.out.println("Sistema de grupos activado");
+        System.out.println("Sistema de latidos activado");
+        System.out.println("Control de admisión activado");
+        System.out.println("Usuarios cargados: " + sesiones.totalUsuarios());
+        System.out.println("Hilos de sesión: " + (configuracion.hilosVirtuales ? "virtuales" : "de plataforma"));
+    }
+    
+    private void aceptarNIO() {
+        servidorNIO.ejecutar();
+    }
+    
+    // Como en ServidorNIO.ejecutar(): un error con una conexión solo la descarta a ella. El
+    // ciclo termina cuando close() cierra el socket del servidor.
+    private void aceptarBloqueante() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = servidorSocket.accept();
+            } catch (IOException e) {
+                if (detenido || servidorSocket.isClosed()) return;
+                System.out.println("Error aceptando conexión: " + e.getMessage());
+                continue;
+            }
+            java.nio.ByteBuffer rechazo = admision.admitir(socket.getInetAddress());
+            if (rechazo != null) {
+                rechazar(socket, rechazo);
+                continue;
+            }
+            try {
+                ColaSalida cola = ColaSalida.nueva(() -> cerrarSinEsperar(socket));
+                UnCliente unCliente = UnCliente.crear(this, socket.getInputStream(), cola, cola);
+                iniciarHilo(new EscritorSalida(cola, socket));
+                iniciarHilo(unCliente);
+            } catch (IOException e) {
+                // Se fue antes de tener sesión.
+                admision.liberar(true);
+                cerrarSinEsperar(socket);
+            }
+        }
     }
     
-    public static boolean eliminarGrupo(String nombreGrupo) {
-        return bd.eliminarGrupo(nombreGrupo);
+    private void iniciarHilo(Runnable tarea) {
+        if (configuracion.hilosVirtuales) {
+            Thread.ofVirtual().name("cliente-virtual").start(tarea);
+        } else {
+            Thread hilo = new Thread(tarea);
+            hilo.start();
+        }
     }
     
-    public static boolean unirseAGrupo(String usuario, String nombreGrupo) {
-        return bd.unirseAGrupo(usuario, nombreGrupo);
+    // La trama cabe de sobra en el búfer del socket recién aceptado, así que no bloquea.
+    private static void rechazar(Socket socket, java.nio.ByteBuffer trama) {
+        try {
+            socket.getOutputStream().write(trama.array(), trama.position(), trama.remaining());
+        } catch (IOException e) {
+            // Ya se fue; no hay nada que avisarle.
+        }
+        cerrarSinEsperar(socket);
     }
     
-    public static boolean salirDeGrupo(String usuario, String nombreGrupo) {
-        return bd.salirDeGrupo(usuario, nombreGrupo);
+    private static void cerrarSinEsperar(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
     
-    public static boolean existeGrupo(String nombreGrupo) {
-        return bd.existeGrupo(nombreGrupo);
+    public boolean nombreDisponible(String nombre) {
+        return !sesiones.estaConectado(nombre);
     }
     
-    public static boolean esMiembroDeGrupo(String usuario, String nombreGrupo) {
-        return bd.esMiembroDeGrupo(usuario, nombreGrupo);
+    // Regresa el id del usuario nuevo, 0 si otro se registró con el mismo nombre mientras se
+    // pedía la contraseña, o -1 si la base no lo guardó (entonces tampoco queda en memoria).
+    public int registrarUsuario(String nombre, String password) {
+        BaseDatos.Usuario usuario = sesiones.registrarUsuario(nombre, password);
+        if (usuario == null) {
+            return 0;
+        }
+        if (!bd.guardarUsuario(usuario.id, nombre, password)) {
+            sesiones.anularRegistro(usuario);
+            return -1;
+        }
+        grupos.registrado(usuario.id);
+        System.out.println("Nuevo usuario registrado: " + nombre + " (id " + usuario.id + ")");
+        return usuario.id;
     }
     
-    public static java.util.List<String> obtenerGruposDisponibles() {
-        return bd.obtenerGruposDisponibles();
+    public boolean autenticarUsuario(String nombre, String password) {
+        return sesiones.autenticar(nombre, password);
     }
     
-    public static java.util.List<String> obtenerMisGrupos(String usuario) {
-        return bd.obtenerMisGrupos(usuario);
+    // Se escribe primero en la base; la tabla en memoria solo cambia si la base aceptó.
+    public boolean bloquearUsuario(int usuarioActual, int usuarioABloquear) {
+        if (usuarioActual == usuarioABloquear || usuarioABloquear <= 0) {
+            return false;
+        }
+        if (!bd.bloquearUsuario(usuarioActual, usuarioABloquear)) {
+            return false;
+        }
+        bloqueos.bloquear(usuarioActual, usuarioABloquear);
+        return true;
     }
     
-    public static java.util.List<String> obtenerMiembrosGrupo(String nombreGrupo) {
-        return bd.obtenerMiembrosGrupo(nombreGrupo);
+    public boolean desbloquearUsuario(int usuarioActual, int usuarioADesbloquear) {
+        if (usuarioADesbloquear <= 0 || !bd.desbloquearUsuario(usuarioActual, usuarioADesbloquear)) {
+            return false;
+        }
+        bloqueos.desbloquear(usuarioActual, usuarioADesbloquear);
+        return true;
     }
     
-    public static long guardarMensajeGrupo(String nombreGrupo, String remitente, String mensaje) {
-        return bd.guardarMensajeGrupo(nombreGrupo, remitente, mensaje);
+    public boolean estasBloqueado(int usuarioOrigen, int usuarioDestino) {
+        return bloqueos.estaBloqueado(usuarioOrigen, usuarioDestino);
     }
     
-    public static void actualizarUltimoMensajeLeido(String usuario, String nombreGrupo, long idMensaje) {
-        bd.actualizarUltimoMensajeLeido(usuario, nombreGrupo, idMensaje);
+    public java.util.List<String> obtenerBloqueados(int usuario) {
+        return bd.obtenerBloqueados(usuario);
     }
     
-    public static java.util.List<BaseDatos.MensajeGrupo> obtenerMensajesNoLeidos(String usuario, String nombreGrupo) {
-        return bd.obtenerMensajesNoLeidos(usuario, nombreGrupo);
+    private void cargarUsuariosDelBD() {
+        sesiones.cargarUsuarios(bd.cargarTodosLosUsuarios());
+        bloqueos.cargar(bd.cargarBloqueos());
+        System.out.println("Usuarios cargados de la BD: " + sesiones.totalUsuarios());
     }
     
-    public static int contarMensajesNoLeidos(String usuario, String nombreGrupo) {
-        return bd.contarMensajesNoLeidos(usuario, nombreGrupo);
+   
+    public java.util.List<String> obtenerGruposDisponibles() {
+        return bd.obtenerGruposDisponibles();
     }
     
-    public static synchronized boolean enviarInvitacionGato(String invitador, String invitado) {
-        String claveInvitacion = invitado + "_invitacion";
-        if (invitacionesPendientes.containsKey(claveInvitacion)) {
-            return false; 
-        }
-        invitacionesPendientes.put(claveInvitacion, invitador);
-        return true;
+    public java.util.List<String> obtenerMisGrupos(int usuario) {
+        return bd.obtenerMisGrupos(usuario);
     }
     
-    public static synchronized String obtenerInvitador(String invitado) {
-        String claveInvitacion = invitado + "_invitacion";
-        return invitacionesPendientes.get(claveInvitacion);
+    public void actualizarUltimoMensajeLeido(int usuario, String nombreGrupo, long idMensaje) {
+        marcas.marcar(usuario, nombreGrupo, idMensaje);
     }
     
-    public static synchronized void eliminarInvitacion(String invitado) {
-        String claveInvitacion = invitado + "_invitacion";
-        invitacionesPendientes.remove(claveInvitacion);
+    public java.util.List<BaseDatos.MensajeGrupo> obtenerMensajesNoLeidos(int usuario, String nombreGrupo) {
+        return bd.obtenerMensajesNoLeidos(usuario, nombreGrupo, marcas.leido(usuario, nombreGrupo));
     }
     
-    public static synchronized boolean crearPartida(String jugador1, String jugador2) {
-        String clavePartida1 = jugador1 + "_" + jugador2;
-        String clavePartida2 = jugador2 + "_" + jugador1;
-        
-        if (partidasActivas.containsKey(clavePartida1) || partidasActivas.containsKey(clavePartida2)) {
-            return false; 
-        }
-        
-        boolean empiezaJ1 = Math.random() < 0.5;
-        PartidaGato partida = new PartidaGato(jugador1, jugador2, empiezaJ1);
-        
-        partidasActivas.put(clavePartida1, partida);
-        partidasActivas.put(clavePartida2, partida);
-        
-        System.out.println("Partida creada entre " + jugador1 + " y " + jugador2);
-        return true;
+    public int contarMensajesNoLeidos(int usuario, String nombreGrupo) {
+        return bd.contarMensajesNoLeidos(usuario, nombreGrupo, marcas.leido(usuario, nombreGrupo));
     }
     
-    public static synchronized PartidaGato obtenerPartida(String jugador1, String jugador2) {
-        String clavePartida = jugador1 + "_" + jugador2;
-        return partidasActivas.get(clavePartida);
+    public PartidaGato crearPartida(UnCliente jugador1, UnCliente jugador2) {
+        boolean empiezaJ1 = Math.random() < 0.5;
+        PartidaGato partida = partidas.crear(jugador1, jugador2, empiezaJ1);
+        if (partida != null) {
+            System.out.println("Partida creada entre " + partida.getJugador1() + " y " + partida.getJugador2());
+        }
+        return partida;
     }
     
-    public static synchronized void finalizarPartida(String jugador1, String jugador2) {
-        String clavePartida1 = jugador1 + "_" + jugador2;
-        String clavePartida2 = jugador2 + "_" + jugador1;
-        
-        partidasActivas.remove(clavePartida1);
-        partidasActivas.remove(clavePartida2);
-        
-        System.out.println("Partida finalizada entre " + jugador1 + " y " + jugador2);
+    public PartidaGato obtenerPartida(int jugador1, int jugador2) {
+        return partidas.obtener(jugador1, jugador2);
     }
     
-    public static synchronized boolean tienePartidaActiva(String jugador) {
-        for (PartidaGato partida : partidasActivas.values()) {
-            if (partida.esJugadorEnPartida(jugador) && !partida.isTerminado()) {
-                return true;
-            }
-        }
-        return false;
+    public void finalizarPartida(PartidaGato partida) {
+        partidas.finalizar(partida);
+        System.out.println("Partida finalizada entre " + partida.getJugador1() + " y " + partida.getJugador2());
     }
     
-    public static synchronized java.util.List<PartidaGato> obtenerPartidasDeJugador(String jugador) {
-        java.util.List<PartidaGato> partidas = new java.util.ArrayList<>();
-        java.util.Set<PartidaGato> partidasVistas = new java.util.HashSet<>();
-        
-        for (PartidaGato partida : partidasActivas.values()) {
-            if (partida.esJugadorEnPartida(jugador) && !partidasVistas.contains(partida)) {
-                partidas.add(partida);
-                partidasVistas.add(partida);
-            }
-        }
-        return partidas;
+    public boolean tienePartidaActiva(int jugador) {
+        return partidas.estaJugando(jugador);
     }
   
-    public static void registrarResultadoPartida(String jugador1, String jugador2, String ganador) {
+    public void registrarResultadoPartida(int jugador1, int jugador2, int ganador) {
         bd.registrarResultadoPartida(jugador1, jugador2, ganador);
     }
     
-    public static java.util.List<String> obtenerRankingGeneral() {
+    public java.util.List<String> obtenerRankingGeneral() {
         return bd.obtenerRankingGeneral();
     }
     
-    public static BaseDatos.EstadisticasEnfrentamiento obtenerEstadisticasEnfrentamiento(String jugador1, String jugador2) {
+    public BaseDatos.EstadisticasEnfrentamiento obtenerEstadisticasEnfrentamiento(int jugador1, int jugador2) {
         return bd.obtenerEstadisticasEnfrentamiento(jugador1, jugador2);
     }
-}
\ No newline at end of file
+    
+    // Puerto, archivo de base y hilos de un servidor. Los valores por omisión son los de
+    // siempre (8080, chat.db, modo bloqueante con hilos de plataforma).
+    public static final class Configuracion {
+        private int puerto = 8080;
+        private String rutaBD = "chat.db";
+        private boolean nio;
+        private boolean hilosVirtuales;
+        private int hilosBucle = Runtime.getRuntime().availableProcessors();
+        private int conexionesBD = 4;
+
+        // Lo que main toma de la línea de comandos (-Dchat.puerto, -Dchat.bd, -Dchat.modo,
+        // -Dchat.hilos, -Dchat.nio.hilos, -Dchat.bd.conexiones).
+        public static Configuracion desdePropiedades() {
+            Configuracion configuracion = new Configuracion();
+            configuracion.puerto = Integer.getInteger("chat.puerto", configuracion.puerto);
+            configuracion.rutaBD = System.getProperty("chat.bd", configuracion.rutaBD);
+            configuracion.nio = System.getProperty("chat.modo", "bloqueante").equalsIgnoreCase("nio");
+            configuracion.hilosVirtuales = System.getProperty("chat.hilos", "plataforma").equalsIgnoreCase("virtuales");
+            configuracion.hilosBucle = Integer.getInteger("chat.nio.hilos", configuracion.hilosBucle);
+            configuracion.conexionesBD = Integer.getInteger("chat.bd.conexiones", configuracion.conexionesBD);
+            return configuracion;
+        }
+
+        // 0 pide un puerto libre cualquiera.
+        public Configuracion puerto(int puerto) {
+            this.puerto = puerto;
+            return this;
+        }
+
+        public Configuracion rutaBD(String rutaBD) {
+            this.rutaBD = rutaBD;
+            return this;
+        }
+
+        public Configuracion nio(boolean nio) {
+            this.nio = nio;
+            return this;
+        }
+
+        public Configuracion hilosVirtuales(boolean hilosVirtuales) {
+            this.hilosVirtuales = hilosVirtuales;
+            return this;
+        }
+
+        public Configuracion hilosBucle(int hilosBucle) {
+            this.hilosBucle = Math.max(1, hilosBucle);
+            return this;
+        }
+
+        // Conexiones que el pool de BaseDatos mantiene abiertas como máximo.
+        public Configuracion conexionesBD(int conexionesBD) {
+            this.conexionesBD = Math.max(1, conexionesBD);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.mycompany.servidormulti;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Modo de conexión basado en Selector: unos pocos hilos de E/S en lugar de un hilo por cliente.
+// Los comandos se ejecutan en un pool de trabajo que solo ocupa hilos mientras hay tramas pendientes.
+public class ServidorNIO implements Closeable {
+    private final ServidorMulti servidor;
+    private final BucleEventos[] bucles;
+    private final ExecutorService trabajadores;
+    private ServerSocketChannel canalServidor;
+
+    public ServidorNIO(ServidorMulti servidor, int hilosBucle, boolean hilosVirtuales) throws IOException {
+        this.servidor = servidor;
+        this.trabajadores = hilosVirtuales
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        this.bucles = new BucleEventos[hilosBucle];
+        for (int i = 0; i < hilosBucle; i++) {
+            bucles[i] = new BucleEventos(servidor, trabajadores);
+        }
+    }
+
+    // El canal sigue en modo bloqueante hasta registrarse en un bucle; la trama es pequeña.
+    private void rechazar(SocketChannel canal, ByteBuffer trama) {
+        try (canal) {
+            canal.write(trama);
+        } catch (IOException e) {
+            // Ya se fue; no hay nada que avisarle.
+        }
+    }
+
+    // Arranca los bucles y abre el puerto; las conexiones se aceptan en ejecutar(). Los bucles
+    // van primero: si el puerto no se puede abrir, detener() igual los termina y cada uno cierra
+    // su selector al salir.
+    public void abrir(int puerto) throws IOException {
+        for (int i = 0; i < bucles.length; i++) {
+            Thread hilo = new Thread(bucles[i], "bucle-nio-" + i);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(puerto), ControlAdmision.BACKLOG);
+        System.out.println("Modo NIO: " + bucles.length + " bucle(s) de eventos");
+    }
+
+    public int getPuerto() {
+        return canalServidor.socket().getLocalPort();
+    }
+
+    // Acepta hasta que close() cierra el canal. Un error con una conexión (se fue a media
+    // aceptación, no se pudo registrar) solo la descarta a ella: se libera su lugar y se sigue.
+    public void ejecutar() {
+        int siguiente = 0;
+        while (true) {
+            SocketChannel canal;
+            try {
+                canal = canalServidor.accept();
+            } catch (ClosedChannelException e) {
+                return; // close() cerró el canal del servidor.
+            } catch (IOException e) {
+                System.out.println("Error aceptando conexión: " + e.getMessage());
+                continue;
+            }
+            ByteBuffer rechazo = servidor.admision.admitir(canal.socket().getInetAddress());
+            if (rechazo != null) {
+                rechazar(canal, rechazo);
+                continue;
+            }
+            try {
+                bucles[siguiente].registrar(canal);
+                siguiente = (siguiente + 1) % bucles.length;
+            } catch (IOException e) {
+                servidor.admision.liberar(true);
+                cerrar(canal);
+            }
+        }
+    }
+
+    private static void cerrar(SocketChannel canal) {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // Ya estaba roto; no queda nada que liberar.
+        }
+    }
+
+    // Solo deja de aceptar: las conexiones abiertas siguen atendidas hasta detener().
+    @Override
+    public void close() throws IOException {
+        if (canalServidor != null) canalServidor.close();
+    }
+
+    public void detener() {
+        for (BucleEventos bucle : bucles) {
+            bucle.detener();
+        }
+        trabajadores.shutdown();
+    }
+}
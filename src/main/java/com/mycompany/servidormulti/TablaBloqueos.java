@@ -0,0 +1,35 @@
+package com.mycompany.servidormulti;
+
+import java.util.List;
+
+// Bloqueos en memoria, por id de usuario: a quién tiene bloqueado cada uno. Se cargan de la
+// base al arrancar y cada bloqueo o desbloqueo se escribe primero en la base y luego aquí, así
+// revisar un bloqueo al mandar un privado ya no es una consulta SQL.
+public class TablaBloqueos {
+    private final ArregloPorId<ConjuntoEnteros> porUsuario = new ArregloPorId<>();
+
+    public void cargar(List<int[]> pares) {
+        for (int[] par : pares) bloquear(par[0], par[1]);
+    }
+
+    public boolean estaBloqueado(int origen, int destino) {
+        if (origen <= 0 || destino <= 0) return false;
+        ConjuntoEnteros bloqueados = porUsuario.obtener(origen);
+        return bloqueados != null && bloqueados.contiene(destino);
+    }
+
+    public void bloquear(int origen, int destino) {
+        ConjuntoEnteros bloqueados = porUsuario.obtener(origen);
+        if (bloqueados == null) {
+            ConjuntoEnteros nuevo = new ConjuntoEnteros();
+            bloqueados = porUsuario.ponerSiAusente(origen, nuevo);
+            if (bloqueados == null) bloqueados = nuevo;
+        }
+        bloqueados.agregar(destino);
+    }
+
+    public void desbloquear(int origen, int destino) {
+        ConjuntoEnteros bloqueados = porUsuario.obtener(origen);
+        if (bloqueados != null) bloqueados.quitar(destino);
+    }
+}
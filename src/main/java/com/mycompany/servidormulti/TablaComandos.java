@@ -0,0 +1,87 @@
+package com.mycompany.servidormulti;
+
+// Tabla de comandos de texto con búsqueda sin distinguir mayúsculas. Se llena una sola vez al
+// cargar la clase que la usa y después solo se lee, así que no necesita cerrojos. Buscar no
+// crea objetos: el hash se calcula sobre los caracteres del mensaje ya pasados a minúscula y
+// la comparación usa regionMatches, en vez de armar cadenas con toLowerCase o substring.
+// Cada nombre puede tener una acción para el mensaje exacto ("jugar") y otra para cuando
+// trae argumentos después de un espacio ("jugar 1 2").
+public final class TablaComandos<T> {
+    private String[] nombres = new String[32];
+    private Object[] exactos = new Object[32];
+    private Object[] conArgumentos = new Object[32];
+    private int total;
+
+    public TablaComandos<T> exacto(String nombre, T accion) {
+        int i = ranura(nombre);
+        exactos[i] = accion;
+        return this;
+    }
+
+    public TablaComandos<T> conArgumentos(String nombre, T accion) {
+        int i = ranura(nombre);
+        conArgumentos[i] = accion;
+        return this;
+    }
+
+    // Primero el mensaje completo, después su primera palabra si trae argumentos.
+    @SuppressWarnings("unchecked")
+    public T buscar(String mensaje) {
+        int i = indice(mensaje, mensaje.length());
+        if (i >= 0 && exactos[i] != null) return (T) exactos[i];
+
+        int espacio = mensaje.indexOf(' ');
+        if (espacio <= 0) return null;
+        i = indice(mensaje, espacio);
+        return i >= 0 ? (T) conArgumentos[i] : null;
+    }
+
+    private int indice(String mensaje, int longitud) {
+        int mascara = nombres.length - 1;
+        for (int i = hash(mensaje, longitud) & mascara; ; i = (i + 1) & mascara) {
+            String nombre = nombres[i];
+            if (nombre == null) return -1;
+            if (nombre.length() == longitud && nombre.regionMatches(true, 0, mensaje, 0, longitud)) return i;
+        }
+    }
+
+    private int ranura(String nombre) {
+        int i = indice(nombre, nombre.length());
+        if (i >= 0) return i;
+        if ((total + 1) * 2 > nombres.length) crecer();
+
+        int mascara = nombres.length - 1;
+        i = hash(nombre, nombre.length()) & mascara;
+        while (nombres[i] != null) i = (i + 1) & mascara;
+        nombres[i] = nombre;
+        total++;
+        return i;
+    }
+
+    private void crecer() {
+        String[] viejosNombres = nombres;
+        Object[] viejosExactos = exactos;
+        Object[] viejosConArgumentos = conArgumentos;
+        nombres = new String[viejosNombres.length * 2];
+        exactos = new Object[nombres.length];
+        conArgumentos = new Object[nombres.length];
+
+        int mascara = nombres.length - 1;
+        for (int j = 0; j < viejosNombres.length; j++) {
+            if (viejosNombres[j] == null) continue;
+            int i = hash(viejosNombres[j], viejosNombres[j].length()) & mascara;
+            while (nombres[i] != null) i = (i + 1) & mascara;
+            nombres[i] = viejosNombres[j];
+            exactos[i] = viejosExactos[j];
+            conArgumentos[i] = viejosConArgumentos[j];
+        }
+    }
+
+    private static int hash(String texto, int longitud) {
+        int h = 0;
+        for (int i = 0; i < longitud; i++) {
+            h = 31 * h + Character.toLowerCase(texto.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,44 @@
+package com.mycompany.servidormulti;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Trama writeUTF ya codificada (longitud + UTF-8 modificado). Se codifica una sola vez por
+// difusión y cada destinatario recibe su propia vista sobre los mismos bytes, sin copiarlos.
+// Delante lleva la cabecera LINEA de ProtocoloV2 (id 0) para los clientes v2.
+// Nadie escribe en el arreglo después de construirla.
+public final class TramaCodificada {
+    private static final int CABECERA_V2 = 4 + ProtocoloV2.CABECERA;
+
+    private final ByteBuffer legada;
+    private final ByteBuffer v2;
+
+    private TramaCodificada(byte[] bytes) {
+        this.v2 = ByteBuffer.wrap(bytes);
+        this.legada = ByteBuffer.wrap(bytes, CABECERA_V2, bytes.length - CABECERA_V2);
+    }
+
+    public static TramaCodificada de(String mensaje) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CABECERA_V2 + mensaje.length() + 2);
+        bytes.write(new byte[CABECERA_V2]);
+        new DataOutputStream(bytes).writeUTF(mensaje);
+        byte[] trama = bytes.toByteArray();
+        ProtocoloV2.escribirCabecera(trama, 0, trama.length - CABECERA_V2, ProtocoloV2.LINEA, 0);
+        return new TramaCodificada(trama);
+    }
+
+    // Cada vista tiene su propia posición, así que varios escritores pueden recorrerla a la vez.
+    public ByteBuffer vista() {
+        return legada.duplicate();
+    }
+
+    public ByteBuffer vistaV2() {
+        return v2.duplicate();
+    }
+
+    public int longitud() {
+        return legada.remaining();
+    }
+}
@@ -1,26 +1,67 @@
 package com.mycompany.servidormulti;
 
 import java.io.*;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
-public class UnCliente implements Runnable {
+public final class UnCliente implements Runnable {
     private static final int MENSAJES_GRATUITOS = 3;
     private static final String PREFIJO_INVITADO = "invitado_";
     private static final String GRUPO_PREDETERMINADO = "Todos";
+    private static final String ERROR_CAMPOS_V2 = "[ERROR]: Faltan argumentos o vienen mal formados.";
+    private static final byte[] BYTES_PONG = LatidoSesion.PONG.getBytes(StandardCharsets.UTF_8);
     
+    private static final LongAdder AHORRADOS_MENSAJE = SalidaRespuesta.ahorradosPor("mensaje");
+    private static final LongAdder AHORRADOS_TEXTO = SalidaRespuesta.ahorradosPor("texto");
+    private static final LongAdder AHORRADOS_PROTOCOLO = SalidaRespuesta.ahorradosPor("protocolo");
+    private static final LongAdder AHORRADOS_COMPRESION = SalidaRespuesta.ahorradosPor("compresion");
+    private static final LongAdder AHORRADOS_BIENVENIDA = SalidaRespuesta.ahorradosPor("bienvenida");
+    private static final LongAdder AHORRADOS_DESCONOCIDO = SalidaRespuesta.ahorradosPor("desconocido");
+    
+    private final ServidorMulti servidor;
     private final DataOutputStream salida;
     private final DataInputStream entrada;
-    private final Socket socket;
-    private String nombreCliente;
+    // Debajo de entrada; permite asomarse a la siguiente solicitud sin consumirla.
+    private final BufferedInputStream entradaBuffer;
+    private final ColaSalida colaSalida;
+    private final SalidaRespuesta respuesta;
+    private final Closeable conexion;
+    private final LatidoSesion latido;
+    private volatile String nombreCliente;
+    // Id del usuario registrado; 0 mientras es invitado.
+    private volatile int idUsuario;
     private boolean autenticado;
     private int mensajesEnviados;
-    private String grupoActual;
+    private volatile String grupoActual;
+    private final AtomicReference<PartidaGato> partidaActual = new AtomicReference<>();
+    private volatile boolean protocoloV2;
+    private boolean esperandoSaludo = true;
+    private boolean bienvenidaEnviada;
+    // Pregunta hecha al usuario que todavía no contesta; solo la toca el hilo que atiende la sesión.
+    private Comando pendiente;
+    // Comando que se está ejecutando; sus preguntas cuentan en sus mismas métricas.
+    private Comando enCurso;
+
+    // La sesión entra al servidor ya construida: hasta entonces nadie más la ve.
+    public static UnCliente crear(ServidorMulti servidor, InputStream in, ColaSalida colaSalida, Closeable conexion) {
+        UnCliente cliente = new UnCliente(servidor, in, colaSalida, conexion);
+        servidor.agregarCliente(cliente);
+        return cliente;
+    }
 
-    public UnCliente(Socket socket) throws IOException {
-        this.socket = socket;
-        this.salida = new DataOutputStream(socket.getOutputStream());
-        this.entrada = new DataInputStream(socket.getInputStream());
+    // El latido solo guarda la referencia; empieza a correr en iniciarCliente().
+    private UnCliente(ServidorMulti servidor, InputStream in, ColaSalida colaSalida, Closeable conexion) {
+        this.servidor = servidor;
+        this.conexion = conexion;
+        this.colaSalida = colaSalida;
+        this.respuesta = new SalidaRespuesta(colaSalida);
+        this.latido = new LatidoSesion(this, colaSalida);
+        this.salida = new DataOutputStream(respuesta);
+        this.entradaBuffer = new BufferedInputStream(in);
+        this.entrada = new DataInputStream(entradaBuffer);
         this.nombreCliente = null;
         this.autenticado = false;
         this.mensajesEnviados = 0;
@@ -41,93 +82,277 @@ public class UnCliente implements Runnable {
     
     private void procesarComandos() throws IOException {
         while (true) {
-            String mensaje = entrada.readUTF();
-            
-            ComandoHandler handler = obtenerHandlerComando(mensaje);
-            if (handler.ejecutar()) continue;
+            procesarSiguienteMensaje();
+        }
+    }
+    
+    void procesarSiguienteMensaje() throws IOException {
+        if (protocoloV2) {
+            ProtocoloV2.Solicitud solicitud = ProtocoloV2.leer(entrada);
+            if (solicitud.codigo == ProtocoloV2.PONG) {
+                latido.registrarPong();
+                respuesta.flush();
+                return;
+            }
+            latido.registrarActividad();
+            procesarSolicitudV2(solicitud);
+            return;
+        }
+        
+        String mensaje = entrada.readUTF();
+        if (mensaje.equals(LatidoSesion.PONG)) {
+            latido.registrarPong();
+            respuesta.flush();
+            return;
+        }
+        latido.registrarActividad();
+        if (esperandoSaludo) {
+            esperandoSaludo = false;
+            if (mensaje.equals(ProtocoloV2.SALUDO)) {
+                activarProtocoloV2();
+                return;
+            }
+        }
+        if (mensaje.equals(CompresorSalida.SOLICITUD)) {
+            activarCompresion();
+            return;
+        }
+        procesarMensaje(mensaje);
+    }
+    
+    private void procesarMensaje(String mensaje) throws IOException {
+        LongAdder ahorrados = AHORRADOS_MENSAJE;
+        
+        try {
+            Comando encontrado = pendiente != null ? tomarPendiente() : buscarComando(mensaje);
+            if (encontrado != null) {
+                enCurso = encontrado;
+                encontrado.accion.ejecutar(this, mensaje);
+                ahorrados = encontrado.enviosAhorrados;
+                return;
+            }
             
-            if (!verificarLimiteMensajes()) continue;
+            if (!verificarLimiteMensajes()) return;
             
             procesarMensajeRegular(mensaje);
+        } finally {
+            enCurso = null;
+            respuesta.terminarComando(ahorrados, hayMasSolicitudes());
         }
     }
     
-    private ComandoHandler obtenerHandlerComando(String mensaje) {
-        String cmd = mensaje.toLowerCase();
-        
-        if (!autenticado) {
-            return obtenerHandlerNoAutenticado(cmd);
+    // Nadie se queda esperando la respuesta: el comando termina aquí, su salida se envía, y la
+    // siguiente línea que llegue (en v2, la siguiente solicitud TEXTO) se entrega a la
+    // continuación en lugar de buscarse como comando. Así ningún hilo se estaciona por sesión.
+    private void preguntar(Accion continuacion) {
+        pendiente = enCurso.continuar(continuacion);
+    }
+    
+    // Se suelta antes de ejecutarla, así la continuación puede hacer la siguiente pregunta.
+    private Comando tomarPendiente() {
+        Comando continuacion = pendiente;
+        pendiente = null;
+        return continuacion;
+    }
+    
+    // Contestar en blanco cancela la operación.
+    private static Accion cancelableSiVacia(Accion accion) {
+        return (c, m) -> {
+            String respuesta = m.trim();
+            if (respuesta.isEmpty()) c.salida.writeUTF("[SISTEMA]: Operación cancelada.");
+            else accion.ejecutar(c, respuesta);
+        };
+    }
+    
+    private void activarProtocoloV2() throws IOException {
+        salida.writeUTF(ProtocoloV2.SALUDO_OK);
+        respuesta.terminarComando(AHORRADOS_PROTOCOLO);
+        respuesta.usarProtocoloV2();
+        protocoloV2 = true;
+    }
+    
+    // La confirmación sale sin comprimir; todo lo que se encole después va por el compresor.
+    private void activarCompresion() throws IOException {
+        salida.writeUTF(CompresorSalida.CONFIRMACION);
+        respuesta.terminarComando(AHORRADOS_COMPRESION);
+        colaSalida.activarCompresion();
+    }
+    
+    private void procesarSolicitudV2(ProtocoloV2.Solicitud solicitud) throws IOException {
+        respuesta.iniciarSolicitud(solicitud.id);
+        if (solicitud.codigo == ProtocoloV2.TEXTO) {
+            String texto;
+            try {
+                texto = solicitud.longitudCampos() > 0 ? solicitud.leerTexto() : "";
+            } catch (EOFException | UTFDataFormatException e) {
+                salida.writeUTF(ERROR_CAMPOS_V2);
+                respuesta.terminarComando(AHORRADOS_TEXTO, hayMasSolicitudes());
+                return;
+            }
+            procesarMensaje(texto);
+            return;
+        }
+        if (solicitud.codigo == ProtocoloV2.COMPRIMIR) {
+            activarCompresion();
+            return;
         }
+        // Las demás solicitudes traen sus argumentos; si había una pregunta abierta se abandona.
+        pendiente = null;
         
-        return obtenerHandlerAutenticado(cmd, mensaje);
+        try {
+            ejecutarSolicitudV2(solicitud);
+        } catch (EOFException | UTFDataFormatException e) {
+            // Los campos se leen de la trama ya recibida: faltan o vienen mal, pero la conexión
+            // sigue bien y las solicitudes encadenadas detrás de esta se atienden.
+            salida.writeUTF(ERROR_CAMPOS_V2);
+        } finally {
+            LongAdder ahorrados = AHORRADOS_V2[solicitud.codigo];
+            respuesta.terminarComando(ahorrados != null ? ahorrados : AHORRADOS_DESCONOCIDO, hayMasSolicitudes());
+        }
     }
     
-    private ComandoHandler obtenerHandlerNoAutenticado(String cmd) {
-        if (cmd.equals("registrar")) return () -> { registrarUsuario(); return true; };
-        if (cmd.equals("iniciar") || cmd.equals("login")) return () -> { iniciarSesion(); return true; };
-        if (cmd.equals("salir") || cmd.equals("logout")) return () -> { cerrarSesion(); return true; };
-        if (cmd.equals("ayuda") || cmd.equals("help")) {
-            return () -> { 
-                salida.writeUTF("[ERROR]: Debes iniciar sesión o registrarte para usar este comando.");
-                return true; 
-            };
-        }
-        return () -> false;
-    }
-    
-    private ComandoHandler obtenerHandlerAutenticado(String cmd, String mensaje) {
-        if (cmd.equals("salir") || cmd.equals("logout")) return () -> { cerrarSesion(); return true; };
-        if (cmd.equals("ayuda") || cmd.equals("help")) return () -> { mostrarAyuda(); return true; };
-        if (cmd.equals("@") || cmd.equals("privado")) return () -> { mostrarUsuariosYEnviarMensaje(); return true; };
-        if (cmd.equals("bloquear")) return () -> { mostrarUsuariosYBloquear(); return true; };
-        if (cmd.equals("desbloquear")) return () -> { mostrarBloqueadosYDesbloquear(); return true; };
-        if (cmd.equals("misbloqueados") || cmd.equals("mis bloqueados")) return () -> { mostrarMisBloqueados(); return true; };
-        
-        ComandoHandler grupoHandler = obtenerHandlerGrupos(cmd);
-        if (grupoHandler != null) return grupoHandler;
-        
-        ComandoHandler juegoHandler = obtenerHandlerJuego(cmd, mensaje);
-        if (juegoHandler != null) return juegoHandler;
-        
-        return () -> false;
-    }
-    
-    private ComandoHandler obtenerHandlerGrupos(String cmd) {
-        if (cmd.equals("creargrupo")) return () -> { crearGrupo(); return true; };
-        if (cmd.equals("eliminargrupo")) return () -> { eliminarGrupo(); return true; };
-        if (cmd.equals("unirse")) return () -> { unirseAGrupo(); return true; };
-        if (cmd.equals("salirgrupo")) return () -> { salirDeGrupo(); return true; };
-        if (cmd.equals("grupos")) return () -> { mostrarGruposDisponibles(); return true; };
-        if (cmd.equals("misgrupos")) return () -> { mostrarMisGrupos(); return true; };
-        if (cmd.equals("miembros")) return () -> { mostrarMiembrosGrupo(); return true; };
-        if (cmd.equals("cambiargrupo")) return () -> { cambiarGrupoActivo(); return true; };
-        if (cmd.equals("grupoactual")) return () -> { mostrarGrupoActual(); return true; };
-        return null;
-    }
-    
-    private ComandoHandler obtenerHandlerJuego(String cmd, String mensaje) {
-        if (cmd.equals("gato") || cmd.equals("jugar")) return () -> { invitarAJugarGato(); return true; };
-        if (cmd.equals("aceptar")) return () -> { aceptarInvitacionGato(); return true; };
-        if (cmd.equals("rechazar")) return () -> { rechazarInvitacionGato(); return true; };
-        if (cmd.equals("partidas")) return () -> { mostrarPartidasActivas(); return true; };
-        if (cmd.equals("rendirse")) return () -> { rendirseEnPartida(); return true; };
-        if (cmd.equals("ranking")) return () -> { mostrarRankingGeneral(); return true; };
-        if (cmd.equals("vs") || cmd.equals("estadisticas")) return () -> { mostrarEstadisticasVs(); return true; };
-        if (esMovimientoGato(mensaje)) {
-            return () -> { 
-                realizarMovimientoGato(esFormatoSimple(mensaje) ? "jugar " + mensaje : mensaje); 
-                return true; 
-            };
+    // Con solicitudes encadenadas ya recibidas, sus respuestas se juntan en un solo envío
+    // que sale al contestar la última. Solo cuenta una solicitud completa que no sea PONG: un
+    // PONG o una trama a medias no generan respuesta, y la de este comando se quedaría en el
+    // búfer hasta que el cliente mandara otra cosa.
+    private boolean hayMasSolicitudes() {
+        try {
+            int disponibles = entradaBuffer.available();
+            if (protocoloV2) return disponibles >= 4 + 1 && solicitudV2Completa(disponibles);
+            return disponibles >= 2 && solicitudTextoCompleta(disponibles);
+        } catch (IOException e) {
+            return false;
         }
-        return null;
     }
     
-    private boolean esMovimientoGato(String mensaje) {
-        return mensaje.toLowerCase().startsWith("jugar ") || mensaje.matches("^[1-3]\\s+[1-3]$");
+    // Bytes ya leídos de la conexión que esperan en entradaBuffer, p. ej. la trama que
+    // hayMasSolicitudes() se asomó a ver.
+    boolean tieneEntradaLeida() {
+        try {
+            return entradaBuffer.available() > 0;
+        } catch (IOException e) {
+            return false;
+        }
     }
     
-    private boolean esFormatoSimple(String mensaje) {
-        return mensaje.matches("^[1-3]\\s+[1-3]$");
+    // Trama v2: longitud (int) y código; la longitud cuenta desde el código.
+    private boolean solicitudV2Completa(int disponibles) throws IOException {
+        entradaBuffer.mark(4 + 1);
+        try {
+            int longitud = entrada.readInt();
+            int codigo = entrada.readUnsignedByte();
+            return codigo != ProtocoloV2.PONG && 4 + (long) longitud <= disponibles;
+        } finally {
+            entradaBuffer.reset();
+        }
+    }
+    
+    // Línea de texto: writeUTF, dos bytes de longitud y el contenido.
+    private boolean solicitudTextoCompleta(int disponibles) throws IOException {
+        entradaBuffer.mark(2 + BYTES_PONG.length);
+        try {
+            int longitud = entrada.readUnsignedShort();
+            if (2 + longitud > disponibles) return false;
+            if (longitud != BYTES_PONG.length) return true;
+            byte[] contenido = new byte[BYTES_PONG.length];
+            entrada.readFully(contenido);
+            return !Arrays.equals(contenido, BYTES_PONG);
+        } finally {
+            entradaBuffer.reset();
+        }
+    }
+    
+    // Cada solicitud trae todos sus argumentos, así que nunca se pregunta nada al usuario.
+    private void ejecutarSolicitudV2(ProtocoloV2.Solicitud solicitud) throws IOException {
+        switch (solicitud.codigo) {
+            case ProtocoloV2.MENSAJE:
+                if (verificarLimiteMensajes()) procesarMensajeRegular(solicitud.leerTexto());
+                break;
+            case ProtocoloV2.PRIVADO:
+                if (verificarAutenticacion()) enviarMensajePrivado(solicitud.leerTexto().trim(), solicitud.leerTexto());
+                break;
+            case ProtocoloV2.REGISTRAR:
+                if (verificarSinSesion()) procesarRegistro(solicitud.leerTexto().trim(), solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.INICIAR:
+                if (verificarSinSesion()) procesarInicioSesion(solicitud.leerTexto().trim(), solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.SALIR:
+                cerrarSesion();
+                break;
+            case ProtocoloV2.CREAR_GRUPO:
+                if (verificarAutenticacion()) procesarCreacionGrupo(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.ELIMINAR_GRUPO:
+                if (verificarAutenticacion()) procesarEliminacionGrupo(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.UNIRSE:
+                if (verificarAutenticacion()) procesarUnionGrupo(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.SALIR_GRUPO:
+                if (verificarAutenticacion()) procesarSalidaGrupo(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.CAMBIAR_GRUPO:
+                if (verificarAutenticacion()) procesarCambioGrupo(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.MIEMBROS:
+                if (verificarAutenticacion()) procesarConsultaMiembros(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.BLOQUEAR:
+                if (verificarAutenticacion()) bloquearUsuario(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.DESBLOQUEAR:
+                if (verificarAutenticacion()) desbloquearUsuario(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.INVITAR:
+                if (verificarAutenticacion() && verificarSinPartidaActiva()) enviarInvitacionJuego(solicitud.leerTexto().trim());
+                break;
+            case ProtocoloV2.ACEPTAR:
+                aceptarInvitacionGato(solicitud.longitudCampos() > 0 ? solicitud.leerTexto().trim() : null);
+                break;
+            case ProtocoloV2.RECHAZAR:
+                rechazarInvitacionGato(solicitud.longitudCampos() > 0 ? solicitud.leerTexto().trim() : null);
+                break;
+            case ProtocoloV2.MOVER:
+                if (solicitud.longitudCampos() < 2) {
+                    salida.writeUTF("[ERROR]: Formato incorrecto. Usa: jugar fila columna (ej: jugar 1 2)");
+                } else if (verificarAutenticacion()) {
+                    aplicarMovimientoGato(solicitud.byteEn(0) - 1, solicitud.byteEn(1) - 1);
+                }
+                break;
+            case ProtocoloV2.RENDIRSE:
+                rendirseEnPartida();
+                break;
+            case ProtocoloV2.VS:
+                if (verificarAutenticacion()) procesarConsultaVs(solicitud.leerTexto().trim());
+                break;
+            default:
+                salida.writeUTF("[ERROR]: Código de solicitud desconocido: " + solicitud.codigo);
+                break;
+        }
+    }
+    
+    // Un mensaje de chat común cuesta una o dos búsquedas en la tabla y ninguna asignación.
+    private Comando buscarComando(String mensaje) {
+        if (!autenticado) return COMANDOS_INVITADO.buscar(mensaje);
+        
+        Comando comando = COMANDOS_SESION.buscar(mensaje);
+        if (comando == null && esFormatoSimple(mensaje)) return MOVIMIENTO_SIMPLE;
+        return comando;
+    }
+    
+    // "fila columna" con dígitos del 1 al 3 separados por espacios, como "1 2".
+    private static boolean esFormatoSimple(String mensaje) {
+        int ultimo = mensaje.length() - 1;
+        if (ultimo < 2 || !esCoordenada(mensaje.charAt(0)) || !esCoordenada(mensaje.charAt(ultimo))) return false;
+        for (int i = 1; i < ultimo; i++) {
+            if (!Character.isWhitespace(mensaje.charAt(i))) return false;
+        }
+        return true;
+    }
+    
+    private static boolean esCoordenada(char c) {
+        return c >= '1' && c <= '3';
     }
     
     private boolean verificarLimiteMensajes() throws IOException {
@@ -164,21 +389,7 @@ public class UnCliente implements Runnable {
     }  
     
     private void enviarMensajeInvitado(String mensaje) throws IOException {
-        String mensajeCompleto = "[Todos] " + nombreCliente + ": " + mensaje;
-        java.util.List<String> miembros = ServidorMulti.obtenerMiembrosGrupo(GRUPO_PREDETERMINADO);
-        
-        for (String miembro : miembros) {
-            if (miembro.equals(nombreCliente)) continue;
-            
-            UnCliente cliente = ServidorMulti.clientes.get(miembro);
-            if (cliente != null && !estaEnPartidaActiva(miembro)) {
-                if (cliente.grupoActual.equals(GRUPO_PREDETERMINADO)) {
-                    enviarSafe(cliente, mensajeCompleto);
-                } else {
-                    enviarSafe(cliente, "[NOTIFICACIÓN]: Nuevo mensaje en 'Todos'");
-                }
-            }
-        }
+        servidor.grupos.publicarInvitado(this, mensaje);
         salida.writeUTF("[Todos] Tú (" + nombreCliente + "): " + mensaje);
     }
     
@@ -194,9 +405,8 @@ public class UnCliente implements Runnable {
     }
     
     private Optional<PartidaGato> obtenerPartidaActiva() {
-        return ServidorMulti.obtenerPartidasDeJugador(nombreCliente).stream()
-            .filter(p -> !p.isTerminado())
-            .findFirst();
+        return Optional.ofNullable(partidaActual.get())
+            .filter(p -> !p.isTerminado());
     }
     
     private void enviarMensajeEnPartidaSafe(String mensaje, PartidaGato partida) {
@@ -208,8 +418,7 @@ public class UnCliente implements Runnable {
     }
     
     private void enviarMensajeEnPartida(String mensaje, PartidaGato partida) throws IOException {
-        String oponente = partida.getOponente(nombreCliente);
-        Optional.ofNullable(ServidorMulti.clientes.get(oponente))
+        Optional.ofNullable(servidor.sesiones.obtener(partida.getIdOponente(idUsuario)))
             .ifPresent(cliente -> enviarSafe(cliente, "[CHAT-PARTIDA] " + nombreCliente + ": " + mensaje));
         salida.writeUTF("[CHAT-PARTIDA] Tú: " + mensaje);
     }
@@ -228,53 +437,55 @@ public class UnCliente implements Runnable {
             return;
         }
         
-        if (!ServidorMulti.esMiembroDeGrupo(nombreCliente, grupoActual)) {
-            salida.writeUTF("[ERROR]: No eres miembro del grupo '" + grupoActual + "'.");
-            return;
-        }
-        
-        long idMensaje = ServidorMulti.guardarMensajeGrupo(grupoActual, nombreCliente, mensaje);
-        
-        if (idMensaje > 0) {
-            ServidorMulti.actualizarUltimoMensajeLeido(nombreCliente, grupoActual, idMensaje);
+        String grupo = grupoActual;
+        GrupoManager.Resultado resultado = servidor.grupos.publicar(grupo, this, mensaje);
+        if (resultado == GrupoManager.Resultado.FALLO) {
+            salida.writeUTF("[ERROR]: No se pudo enviar el mensaje.");
+        } else if (resultado != GrupoManager.Resultado.HECHO) {
+            salida.writeUTF("[ERROR]: No eres miembro del grupo '" + grupo + "'.");
         }
-        
-        distribuirMensajeGrupo(mensaje, idMensaje);
     }
     
-    private void distribuirMensajeGrupo(String mensaje, long idMensaje) throws IOException {
-        String mensajeCompleto = "[" + grupoActual + "] " + nombreCliente + ": " + mensaje;
-        java.util.List<String> miembros = ServidorMulti.obtenerMiembrosGrupo(grupoActual);
-        
-        for (String miembro : miembros) {
-            if (miembro.equals(nombreCliente)) continue;
-            
-            UnCliente cliente = ServidorMulti.clientes.get(miembro);
-            if (cliente != null && !estaEnPartidaActiva(miembro)) {
-                if (cliente.grupoActual.equals(grupoActual)) {
-                    enviarSafe(cliente, mensajeCompleto);
-                    if (idMensaje > 0) {
-                        ServidorMulti.actualizarUltimoMensajeLeido(miembro, grupoActual, idMensaje);
-                    }
-                } else {
-                    enviarSafe(cliente, "[NOTIFICACIÓN]: Nuevo mensaje en '" + grupoActual + "'");
-                }
-            }
+    private void enviarSafe(UnCliente cliente, String mensaje) {
+        try {
+            cliente.enviar(mensaje);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
     
-    private void enviarSafe(UnCliente cliente, String mensaje) {
+    // Para avisos que salen de otros hilos (la rueda de temporizadores, otra sesión).
+    void avisar(String mensaje) {
         try {
-            cliente.salida.writeUTF(mensaje);
+            enviar(mensaje);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
     
-    private void inicializarCliente() throws IOException {
+    // Encola una trama en la salida de este cliente; se puede llamar desde el hilo de otro cliente.
+    void enviar(String mensaje) throws IOException {
+        enviar(TramaCodificada.de(mensaje));
+    }
+    
+    void enviar(TramaCodificada trama) {
+        colaSalida.encolar(protocoloV2 ? trama.vistaV2() : trama.vista());
+    }
+    
+    // Bloque de respuesta aparte para escribirle a este cliente desde el hilo de otro.
+    private SalidaRespuesta nuevoBloque() {
+        SalidaRespuesta bloque = new SalidaRespuesta(colaSalida);
+        if (protocoloV2) bloque.usarProtocoloV2();
+        return bloque;
+    }
+    
+    void inicializarCliente() throws IOException {
         enviarMensajeBienvenida();
-        nombreCliente = PREFIJO_INVITADO + System.currentTimeMillis();
-        ServidorMulti.registrarCliente(nombreCliente, this);
+        nombreCliente = servidor.sesiones.registrarInvitado(PREFIJO_INVITADO, this);
+        respuesta.terminarComando(AHORRADOS_BIENVENIDA);
+        bienvenidaEnviada = true;
+        servidor.admision.terminarSaludo();
+        latido.iniciar();
     }
 
     private void enviarMensajeBienvenida() throws IOException {
@@ -285,21 +496,69 @@ public class UnCliente implements Runnable {
         salida.writeUTF("Escribe 'ayuda' para ver todos los comandos disponibles.");
     }
 
-    private boolean estaEnPartidaActiva(String nombreJugador) {
-        return ServidorMulti.obtenerPartidasDeJugador(nombreJugador).stream()
-            .anyMatch(p -> !p.isTerminado());
+    // Falla si otra sesión reclamó ese nombre primero.
+    private boolean cambiarNombreCliente(String nuevoNombre) {
+        if (!servidor.sesiones.renombrar(nombreCliente, nuevoNombre, this)) return false;
+        nombreCliente = nuevoNombre;
+        idUsuario = servidor.sesiones.idDe(nuevoNombre);
+        if (idUsuario > 0) servidor.grupos.conectar(idUsuario);
+        return true;
     }
     
-    private void cambiarNombreCliente(String nuevoNombre) {
-        ServidorMulti.clientes.remove(nombreCliente);
-        nombreCliente = nuevoNombre;
-        ServidorMulti.registrarCliente(nombreCliente, this);
+    private void volverAInvitado() {
+        String anterior = nombreCliente;
+        nombreCliente = servidor.sesiones.registrarInvitado(PREFIJO_INVITADO, this);
+        int idAnterior = idUsuario;
+        idUsuario = 0;
+        servidor.sesiones.quitar(anterior, this);
+        if (idAnterior > 0) {
+            servidor.grupos.desconectar(idAnterior);
+            servidor.marcas.cerrarSesion(idAnterior);
+        }
     }
     
     private void notificarATodos(String mensaje, UnCliente remitente) {
-        ServidorMulti.clientes.values().stream()
-            .filter(cliente -> cliente != remitente && !estaEnPartidaActiva(cliente.nombreCliente))
-            .forEach(cliente -> enviarSafe(cliente, "[SISTEMA]: " + mensaje));
+        TramaCodificada trama;
+        try {
+            trama = TramaCodificada.de("[SISTEMA]: " + mensaje);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        servidor.sesiones.conectados().stream()
+            .filter(cliente -> cliente != remitente && !cliente.estaJugando())
+            .forEach(cliente -> cliente.enviar(trama));
+    }
+    
+    // Las difusiones lo consultan por cada destinatario: es una sola lectura.
+    boolean estaJugando() {
+        PartidaGato partida = partidaActual.get();
+        return partida != null && !partida.isTerminado();
+    }
+    
+    PartidaGato getPartidaActual() {
+        return partidaActual.get();
+    }
+    
+    void asignarPartida(PartidaGato partida) {
+        partidaActual.set(partida);
+    }
+    
+    // Solo la suelta si no la reemplazó ya una partida nueva.
+    void soltarPartida(PartidaGato partida) {
+        partidaActual.compareAndSet(partida, null);
+    }
+    
+    boolean usaProtocoloV2() {
+        return protocoloV2;
+    }
+    
+    String getNombreCliente() {
+        return nombreCliente;
+    }
+    
+    int getIdUsuario() {
+        return idUsuario;
     }
     
     public String getGrupoActual() {
@@ -310,11 +569,13 @@ public class UnCliente implements Runnable {
         if (!verificarAutenticacion()) return;
         
         salida.writeUTF("[SISTEMA]: Ingresa el nombre del nuevo grupo:");
-        String nombreGrupo = entrada.readUTF().trim();
-        
+        preguntar((c, m) -> c.procesarCreacionGrupo(m.trim()));
+    }
+    
+    private void procesarCreacionGrupo(String nombreGrupo) throws IOException {
         if (!validarNombreGrupo(nombreGrupo)) return;
         
-        if (ServidorMulti.crearGrupo(nombreGrupo, nombreCliente)) {
+        if (servidor.grupos.crear(nombreGrupo, idUsuario) == GrupoManager.Resultado.HECHO) {
             salida.writeUTF("[SISTEMA]: ¡Grupo '" + nombreGrupo + "' creado exitosamente!");
             salida.writeUTF("[SISTEMA]: Ya eres miembro de este grupo.");
             salida.writeUTF("[SISTEMA]: Usa 'cambiargrupo' para cambiar a este grupo.");
@@ -334,7 +595,7 @@ public class UnCliente implements Runnable {
             return false;
         }
         
-        if (ServidorMulti.existeGrupo(nombreGrupo)) {
+        if (servidor.grupos.existe(nombreGrupo)) {
             salida.writeUTF("[ERROR]: Ya existe un grupo con ese nombre.");
             return false;
         }
@@ -345,7 +606,7 @@ public class UnCliente implements Runnable {
     private void eliminarGrupo() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> misGrupos = ServidorMulti.obtenerMisGrupos(nombreCliente);
+        java.util.List<String> misGrupos = servidor.obtenerMisGrupos(idUsuario);
         if (misGrupos.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No perteneces a ningún grupo.");
             return;
@@ -354,14 +615,7 @@ public class UnCliente implements Runnable {
         mostrarListaGrupos(misGrupos);
         
         salida.writeUTF("[SISTEMA]: Ingresa el nombre del grupo a eliminar:");
-        String nombreGrupo = entrada.readUTF().trim();
-        
-        if (nombreGrupo.isEmpty()) {
-            salida.writeUTF("[SISTEMA]: Operación cancelada.");
-            return;
-        }
-        
-        procesarEliminacionGrupo(nombreGrupo);
+        preguntar(cancelableSiVacia(UnCliente::procesarEliminacionGrupo));
     }
     
     private void mostrarListaGrupos(java.util.List<String> grupos) throws IOException {
@@ -377,52 +631,39 @@ public class UnCliente implements Runnable {
             return;
         }
         
-        if (!ServidorMulti.existeGrupo(nombreGrupo)) {
+        GrupoManager.Resultado resultado = servidor.grupos.eliminar(nombreGrupo, this);
+        if (resultado == GrupoManager.Resultado.NO_EXISTE) {
             salida.writeUTF("[ERROR]: El grupo '" + nombreGrupo + "' no existe.");
-            return;
-        }
-        
-        if (ServidorMulti.eliminarGrupo(nombreGrupo)) {
+        } else if (resultado == GrupoManager.Resultado.HECHO) {
             salida.writeUTF("[SISTEMA]: Grupo '" + nombreGrupo + "' eliminado exitosamente.");
             if (grupoActual.equals(nombreGrupo)) {
                 grupoActual = GRUPO_PREDETERMINADO;
                 salida.writeUTF("[SISTEMA]: Tu grupo actual ahora es: " + GRUPO_PREDETERMINADO);
             }
-            notificarEliminacionGrupo(nombreGrupo);
         } else {
             salida.writeUTF("[ERROR]: No se pudo eliminar el grupo.");
         }
     }
     
-    private void notificarEliminacionGrupo(String nombreGrupo) {
-        ServidorMulti.clientes.values().forEach(cliente -> {
-            if (cliente.grupoActual.equals(nombreGrupo) && !cliente.nombreCliente.equals(nombreCliente)) {
-                cliente.grupoActual = GRUPO_PREDETERMINADO;
-                enviarSafe(cliente, "[SISTEMA]: El grupo '" + nombreGrupo + "' ha sido eliminado.");
-                enviarSafe(cliente, "[SISTEMA]: Tu grupo actual ahora es: " + GRUPO_PREDETERMINADO);
-            }
-        });
+    // Lo llama el actor del grupo eliminado para cada miembro conectado.
+    void grupoEliminado(String nombreGrupo) {
+        if (!grupoActual.equals(nombreGrupo)) return;
+        grupoActual = GRUPO_PREDETERMINADO;
+        avisar("[SISTEMA]: El grupo '" + nombreGrupo + "' ha sido eliminado.");
+        avisar("[SISTEMA]: Tu grupo actual ahora es: " + GRUPO_PREDETERMINADO);
     }
     
     private void unirseAGrupo() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> gruposDisponibles = ServidorMulti.obtenerGruposDisponibles();
+        java.util.List<String> gruposDisponibles = servidor.obtenerGruposDisponibles();
         if (gruposDisponibles.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No hay grupos disponibles.");
             return;
         }
         
         mostrarGruposYSolicitarNombre(gruposDisponibles);
-        
-        String nombreGrupo = entrada.readUTF().trim();
-        
-        if (nombreGrupo.isEmpty()) {
-            salida.writeUTF("[SISTEMA]: Operación cancelada.");
-            return;
-        }
-        
-        procesarUnionGrupo(nombreGrupo);
+        preguntar(cancelableSiVacia(UnCliente::procesarUnionGrupo));
     }
     
     private void mostrarGruposYSolicitarNombre(java.util.List<String> grupos) throws IOException {
@@ -434,21 +675,16 @@ public class UnCliente implements Runnable {
     }
     
     private void procesarUnionGrupo(String nombreGrupo) throws IOException {
-        if (!ServidorMulti.existeGrupo(nombreGrupo)) {
+        GrupoManager.Resultado resultado = servidor.grupos.unirse(idUsuario, nombreGrupo);
+        if (resultado == GrupoManager.Resultado.NO_EXISTE) {
             salida.writeUTF("[ERROR]: El grupo '" + nombreGrupo + "' no existe.");
-            return;
-        }
-        
-        if (ServidorMulti.esMiembroDeGrupo(nombreCliente, nombreGrupo)) {
+        } else if (resultado == GrupoManager.Resultado.YA_MIEMBRO) {
             salida.writeUTF("[ERROR]: Ya eres miembro de este grupo.");
-            return;
-        }
-        
-        if (ServidorMulti.unirseAGrupo(nombreCliente, nombreGrupo)) {
+        } else if (resultado == GrupoManager.Resultado.HECHO) {
             salida.writeUTF("[SISTEMA]: ¡Te has unido al grupo '" + nombreGrupo + "'!");
             salida.writeUTF("[SISTEMA]: Usa 'cambiargrupo' para cambiar a este grupo.");
             
-            int mensajesNoLeidos = ServidorMulti.contarMensajesNoLeidos(nombreCliente, nombreGrupo);
+            int mensajesNoLeidos = servidor.contarMensajesNoLeidos(idUsuario, nombreGrupo);
             if (mensajesNoLeidos > 0) {
                 salida.writeUTF("[SISTEMA]: Tienes " + mensajesNoLeidos + " mensajes nuevos en este grupo.");
             }
@@ -460,7 +696,7 @@ public class UnCliente implements Runnable {
     private void salirDeGrupo() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> misGrupos = ServidorMulti.obtenerMisGrupos(nombreCliente);
+        java.util.List<String> misGrupos = servidor.obtenerMisGrupos(idUsuario);
         if (misGrupos.isEmpty() || (misGrupos.size() == 1 && misGrupos.get(0).equals("Todos"))) {
             salida.writeUTF("[SISTEMA]: No perteneces a ningún grupo (excepto 'Todos').");
             return;
@@ -469,14 +705,7 @@ public class UnCliente implements Runnable {
         mostrarGruposSinTodos(misGrupos);
         
         salida.writeUTF("[SISTEMA]: Ingresa el nombre del grupo:");
-        String nombreGrupo = entrada.readUTF().trim();
-        
-        if (nombreGrupo.isEmpty()) {
-            salida.writeUTF("[SISTEMA]: Operación cancelada.");
-            return;
-        }
-        
-        procesarSalidaGrupo(nombreGrupo);
+        preguntar(cancelableSiVacia(UnCliente::procesarSalidaGrupo));
     }
     
     private void mostrarGruposSinTodos(java.util.List<String> grupos) throws IOException {
@@ -494,12 +723,10 @@ public class UnCliente implements Runnable {
             return;
         }
         
-        if (!ServidorMulti.esMiembroDeGrupo(nombreCliente, nombreGrupo)) {
+        GrupoManager.Resultado resultado = servidor.grupos.salir(idUsuario, nombreGrupo);
+        if (resultado == GrupoManager.Resultado.NO_EXISTE || resultado == GrupoManager.Resultado.NO_MIEMBRO) {
             salida.writeUTF("[ERROR]: No eres miembro de este grupo.");
-            return;
-        }
-        
-        if (ServidorMulti.salirDeGrupo(nombreCliente, nombreGrupo)) {
+        } else if (resultado == GrupoManager.Resultado.HECHO) {
             salida.writeUTF("[SISTEMA]: Has salido del grupo '" + nombreGrupo + "'.");
             if (grupoActual.equals(nombreGrupo)) {
                 grupoActual = GRUPO_PREDETERMINADO;
@@ -513,7 +740,7 @@ public class UnCliente implements Runnable {
     private void mostrarGruposDisponibles() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> grupos = ServidorMulti.obtenerGruposDisponibles();
+        java.util.List<String> grupos = servidor.obtenerGruposDisponibles();
         if (grupos.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No hay grupos disponibles.");
             return;
@@ -531,7 +758,7 @@ public class UnCliente implements Runnable {
     private void mostrarMisGrupos() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> grupos = ServidorMulti.obtenerMisGrupos(nombreCliente);
+        java.util.List<String> grupos = servidor.obtenerMisGrupos(idUsuario);
         if (grupos.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No perteneces a ningún grupo.");
             return;
@@ -540,7 +767,7 @@ public class UnCliente implements Runnable {
         salida.writeUTF("");
         salida.writeUTF("=== TUS GRUPOS ===");
         for (String grupo : grupos) {
-            int noLeidos = ServidorMulti.contarMensajesNoLeidos(nombreCliente, grupo);
+            int noLeidos = servidor.contarMensajesNoLeidos(idUsuario, grupo);
             String indicador = grupo.equals(grupoActual) ? " [ACTIVO]" : "";
             String mensajes = noLeidos > 0 ? " (" + noLeidos + " nuevos)" : "";
             salida.writeUTF("  - " + grupo + indicador + mensajes);
@@ -554,14 +781,11 @@ public class UnCliente implements Runnable {
         if (!verificarAutenticacion()) return;
         
         salida.writeUTF("[SISTEMA]: Ingresa el nombre del grupo:");
-        String nombreGrupo = entrada.readUTF().trim();
-        
-        if (nombreGrupo.isEmpty()) {
-            salida.writeUTF("[SISTEMA]: Operación cancelada.");
-            return;
-        }
-        
-        if (!ServidorMulti.existeGrupo(nombreGrupo)) {
+        preguntar(cancelableSiVacia(UnCliente::procesarConsultaMiembros));
+    }
+    
+    private void procesarConsultaMiembros(String nombreGrupo) throws IOException {
+        if (!servidor.grupos.existe(nombreGrupo)) {
             salida.writeUTF("[ERROR]: El grupo '" + nombreGrupo + "' no existe.");
             return;
         }
@@ -570,7 +794,7 @@ public class UnCliente implements Runnable {
     }
     
     private void mostrarListaMiembros(String nombreGrupo) throws IOException {
-        java.util.List<String> miembros = ServidorMulti.obtenerMiembrosGrupo(nombreGrupo);
+        java.util.List<String> miembros = servidor.grupos.nombresMiembros(nombreGrupo);
         if (miembros.isEmpty()) {
             salida.writeUTF("[SISTEMA]: El grupo no tiene miembros.");
             return;
@@ -579,7 +803,7 @@ public class UnCliente implements Runnable {
         salida.writeUTF("");
         salida.writeUTF("=== MIEMBROS DE '" + nombreGrupo + "' ===");
         for (String miembro : miembros) {
-            String estado = ServidorMulti.clientes.containsKey(miembro) ? "[ONLINE]" : "[OFFLINE]";
+            String estado = servidor.sesiones.estaConectado(miembro) ? "[ONLINE]" : "[OFFLINE]";
             salida.writeUTF("  - " + miembro + " " + estado);
         }
         salida.writeUTF("");
@@ -589,7 +813,7 @@ public class UnCliente implements Runnable {
     private void cambiarGrupoActivo() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> misGrupos = ServidorMulti.obtenerMisGrupos(nombreCliente);
+        java.util.List<String> misGrupos = servidor.obtenerMisGrupos(idUsuario);
         if (misGrupos.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No perteneces a ningún grupo.");
             return;
@@ -598,20 +822,13 @@ public class UnCliente implements Runnable {
         mostrarMisGruposConNoLeidos(misGrupos);
         
         salida.writeUTF("[SISTEMA]: Ingresa el nombre del grupo:");
-        String nombreGrupo = entrada.readUTF().trim();
-        
-        if (nombreGrupo.isEmpty()) {
-            salida.writeUTF("[SISTEMA]: Operación cancelada.");
-            return;
-        }
-        
-        procesarCambioGrupo(nombreGrupo);
+        preguntar(cancelableSiVacia(UnCliente::procesarCambioGrupo));
     }
     
     private void mostrarMisGruposConNoLeidos(java.util.List<String> grupos) throws IOException {
         salida.writeUTF("[SISTEMA]: Tus grupos:");
         for (String grupo : grupos) {
-            int noLeidos = ServidorMulti.contarMensajesNoLeidos(nombreCliente, grupo);
+            int noLeidos = servidor.contarMensajesNoLeidos(idUsuario, grupo);
             String indicador = grupo.equals(grupoActual) ? " [ACTIVO]" : "";
             String mensajes = noLeidos > 0 ? " 📬 (" + noLeidos + " nuevos)" : " ✓";
             salida.writeUTF("  - " + grupo + indicador + mensajes);
@@ -619,7 +836,7 @@ public class UnCliente implements Runnable {
     }
     
     private void procesarCambioGrupo(String nombreGrupo) throws IOException {
-        if (!ServidorMulti.esMiembroDeGrupo(nombreCliente, nombreGrupo)) {
+        if (!servidor.grupos.esMiembro(idUsuario, nombreGrupo)) {
             salida.writeUTF("[ERROR]: No eres miembro del grupo '" + nombreGrupo + "'.");
             return;
         }
@@ -632,7 +849,7 @@ public class UnCliente implements Runnable {
     
     private void mostrarYMarcarMensajesNoLeidos() throws IOException {
         java.util.List<BaseDatos.MensajeGrupo> mensajesNoLeidos = 
-            ServidorMulti.obtenerMensajesNoLeidos(nombreCliente, grupoActual);
+            servidor.obtenerMensajesNoLeidos(idUsuario, grupoActual);
         
         if (!mensajesNoLeidos.isEmpty()) {
             salida.writeUTF("");
@@ -643,7 +860,7 @@ public class UnCliente implements Runnable {
             
             for (BaseDatos.MensajeGrupo msg : mensajesNoLeidos) {
                 salida.writeUTF("[" + grupoActual + "] " + msg.remitente + ": " + msg.mensaje);
-                ServidorMulti.actualizarUltimoMensajeLeido(nombreCliente, grupoActual, msg.id);
+                servidor.actualizarUltimoMensajeLeido(idUsuario, grupoActual, msg.id);
             }
             salida.writeUTF("");
             salida.writeUTF("--------------------------------------------");
@@ -658,46 +875,57 @@ public class UnCliente implements Runnable {
         
         salida.writeUTF("[SISTEMA]: Tu grupo actual es: " + grupoActual);
         
-        int noLeidos = ServidorMulti.contarMensajesNoLeidos(nombreCliente, grupoActual);
+        int noLeidos = servidor.contarMensajesNoLeidos(idUsuario, grupoActual);
         if (noLeidos > 0) {
             salida.writeUTF("[SISTEMA]: Tienes " + noLeidos + " mensaje(s) no leído(s).");
         }
     }
     
-    private void manejarDesconexion() {
-        if (nombreCliente == null) return;
-        
-        finalizarPartidasActivas();
-        ServidorMulti.clientes.remove(nombreCliente);
-        notificarATodos(nombreCliente + " se ha desconectado.", this);
-        cerrarSocket();
+    void manejarDesconexion() {
+        latido.detener();
+        servidor.admision.liberar(!bienvenidaEnviada);
+        if (nombreCliente != null) {
+            cancelarInvitaciones();
+            finalizarPartidasActivas();
+            servidor.sesiones.quitar(nombreCliente, this);
+            if (idUsuario > 0) {
+                servidor.grupos.desconectar(idUsuario);
+                servidor.marcas.cerrarSesion(idUsuario);
+            }
+            notificarATodos(nombreCliente + " se ha desconectado.", this);
+            cerrarSocket();
+        }
+        servidor.quitarCliente(this);
     }
     
     private void finalizarPartidasActivas() {
-        ServidorMulti.obtenerPartidasDeJugador(nombreCliente).stream()
-            .filter(partida -> !partida.isTerminado())
-            .forEach(this::finalizarPartida);
+        obtenerPartidaActiva().ifPresent(this::finalizarPartida);
     }
     
     private void finalizarPartida(PartidaGato partida) {
-        String oponente = partida.getOponente(nombreCliente);
-        partida.abandonar(nombreCliente);
+        partida.abandonar(idUsuario);
         
-        ServidorMulti.registrarResultadoPartida(partida.getJugador1(), partida.getJugador2(), oponente);
+        servidor.registrarResultadoPartida(partida.getIdJugador1(), partida.getIdJugador2(), partida.getIdOponente(idUsuario));
         
         notificarVictoriaPorDesconexion(partida);
-        ServidorMulti.finalizarPartida(partida.getJugador1(), partida.getJugador2());
+        servidor.finalizarPartida(partida);
     }
     
     private void notificarVictoriaPorDesconexion(PartidaGato partida) {
-        String oponente = partida.getOponente(nombreCliente);
-        Optional.ofNullable(ServidorMulti.clientes.get(oponente))
+        Optional.ofNullable(servidor.sesiones.obtener(partida.getIdOponente(idUsuario)))
             .ifPresent(cliente -> enviarSafe(cliente, "[GATO]: " + nombreCliente + " se desconectó. ¡Has ganado la partida!"));
     }
     
+    // Lo usa el servidor al detenerse: corta sin vaciar la cola y la desconexión sigue su
+    // camino normal desde el lector.
+    void cortarConexion() {
+        colaSalida.desconectar();
+    }
+    
     private void cerrarSocket() {
+        respuesta.flush();
         try {
-            socket.close();
+            conexion.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -709,30 +937,28 @@ public class UnCliente implements Runnable {
         
         salida.writeUTF("[USUARIOS ONLINE]: " + usuariosOnline);
         salida.writeUTF("[SISTEMA]: Escribe: usuario mensaje");
-        
-        String[] datosMensaje = leerDatosMensajePrivado();
-        if (datosMensaje != null) enviarMensajePrivado(datosMensaje[0], datosMensaje[1]);
+        preguntar(UnCliente::procesarDatosMensajePrivado);
     }
     
     private String obtenerUsuariosOnline() {
-        return ServidorMulti.clientes.keySet().stream()
+        return servidor.sesiones.nombresConectados().stream()
             .filter(usuario -> !usuario.equals(nombreCliente) && !usuario.startsWith(PREFIJO_INVITADO))
             .reduce((a, b) -> a + ", " + b)
             .orElse("");
     }
     
-    private String[] leerDatosMensajePrivado() throws IOException {
-        String[] partes = entrada.readUTF().trim().split(" ", 2);
+    private void procesarDatosMensajePrivado(String respuesta) throws IOException {
+        String[] partes = respuesta.trim().split(" ", 2);
         if (partes.length < 2) {
             salida.writeUTF("[ERROR]: Formato incorrecto. Usa: usuario mensaje");
-            return null;
+            return;
         }
-        return partes;
+        enviarMensajePrivado(partes[0], partes[1]);
     }
     
     private void enviarMensajePrivado(String destino, String mensaje) throws IOException {
         if (validarEnvioPrivado(destino)) {
-            Optional.ofNullable(ServidorMulti.clientes.get(destino))
+            Optional.ofNullable(servidor.sesiones.obtener(destino))
                 .ifPresentOrElse(
                     cliente -> {
                         enviarSafe(cliente, "[PRIVADO de " + nombreCliente + "]: " + mensaje);
@@ -745,7 +971,7 @@ public class UnCliente implements Runnable {
     }
     
     private boolean validarEnvioPrivado(String destino) throws IOException {
-        if (!ServidorMulti.usuarios.containsKey(destino)) {
+        if (!servidor.sesiones.existeUsuario(destino)) {
             salida.writeUTF("[ERROR]: Usuario '" + destino + "' no existe.");
             return false;
         }
@@ -753,7 +979,7 @@ public class UnCliente implements Runnable {
             salida.writeUTF("[ERROR]: Debes autenticarte para enviar mensajes privados.");
             return false;
         }
-        if (ServidorMulti.estasBloqueado(destino, nombreCliente)) {
+        if (servidor.estasBloqueado(servidor.sesiones.idDe(destino), idUsuario)) {
             salida.writeUTF("[ERROR]: No puedes enviar mensajes a " + destino + " (bloqueado).");
             return false;
         }
@@ -768,17 +994,14 @@ public class UnCliente implements Runnable {
         
         salida.writeUTF("[USUARIOS]: " + usuariosDisponibles);
         salida.writeUTF("[SISTEMA]: Escribe el nombre del usuario:");
-        
-        String usuarioABloquear = entrada.readUTF().trim();
-        if (!usuarioABloquear.isEmpty()) bloquearUsuario(usuarioABloquear);
-        else salida.writeUTF("[SISTEMA]: Operación cancelada.");
+        preguntar(cancelableSiVacia(UnCliente::bloquearUsuario));
     }
     
     private String obtenerUsuariosParaBloquear() {
-        java.util.List<String> bloqueados = ServidorMulti.obtenerBloqueados(nombreCliente);
-        return ServidorMulti.usuarios.keySet().stream()
+        java.util.List<String> bloqueados = servidor.obtenerBloqueados(idUsuario);
+        return servidor.sesiones.nombresUsuarios().stream()
             .filter(usuario -> !usuario.equals(nombreCliente) && !bloqueados.contains(usuario))
-            .map(usuario -> usuario + (ServidorMulti.clientes.containsKey(usuario) ? "[ON]" : "[OFF]"))
+            .map(usuario -> usuario + (servidor.sesiones.estaConectado(usuario) ? "[ON]" : "[OFF]"))
             .reduce((a, b) -> a + ", " + b)
             .orElse("");
     }
@@ -788,16 +1011,16 @@ public class UnCliente implements Runnable {
             salida.writeUTF("[ERROR]: No puedes bloquearte a ti mismo.");
             return;
         }
-        if (!ServidorMulti.usuarios.containsKey(usuario)) {
+        if (!servidor.sesiones.existeUsuario(usuario)) {
             salida.writeUTF("[ERROR]: El usuario '" + usuario + "' no existe.");
             return;
         }
-        if (ServidorMulti.estasBloqueado(nombreCliente, usuario)) {
+        if (servidor.estasBloqueado(idUsuario, servidor.sesiones.idDe(usuario))) {
             salida.writeUTF("[ERROR]: Ya tienes bloqueado a " + usuario + ".");
             return;
         }
         
-        boolean exito = ServidorMulti.bloquearUsuario(nombreCliente, usuario);
+        boolean exito = servidor.bloquearUsuario(idUsuario, servidor.sesiones.idDe(usuario));
         String mensaje = exito 
             ? "[SISTEMA]: ¡Usuario '" + usuario + "' bloqueado correctamente!"
             : "[ERROR]: No se pudo bloquear al usuario. Intenta de nuevo.";
@@ -808,7 +1031,7 @@ public class UnCliente implements Runnable {
     private void mostrarBloqueadosYDesbloquear() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> bloqueados = ServidorMulti.obtenerBloqueados(nombreCliente);
+        java.util.List<String> bloqueados = servidor.obtenerBloqueados(idUsuario);
         if (bloqueados.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No tienes usuarios bloqueados.");
             return;
@@ -816,23 +1039,20 @@ public class UnCliente implements Runnable {
         
         salida.writeUTF("[BLOQUEADOS]: " + formatearListaUsuarios(bloqueados));
         salida.writeUTF("[SISTEMA]: Escribe el nombre del usuario:");
-        
-        String usuarioADesbloquear = entrada.readUTF().trim();
-        if (!usuarioADesbloquear.isEmpty()) desbloquearUsuario(usuarioADesbloquear);
-        else salida.writeUTF("[SISTEMA]: Operación cancelada.");
+        preguntar(cancelableSiVacia(UnCliente::desbloquearUsuario));
     }
     
     private void desbloquearUsuario(String usuario) throws IOException {
-        if (!ServidorMulti.usuarios.containsKey(usuario)) {
+        if (!servidor.sesiones.existeUsuario(usuario)) {
             salida.writeUTF("[ERROR]: El usuario '" + usuario + "' no existe.");
             return;
         }
-        if (!ServidorMulti.estasBloqueado(nombreCliente, usuario)) {
+        if (!servidor.estasBloqueado(idUsuario, servidor.sesiones.idDe(usuario))) {
             salida.writeUTF("[ERROR]: No tienes bloqueado a " + usuario + ".");
             return;
         }
         
-        boolean exito = ServidorMulti.desbloquearUsuario(nombreCliente, usuario);
+        boolean exito = servidor.desbloquearUsuario(idUsuario, servidor.sesiones.idDe(usuario));
         String mensaje = exito
             ? "[SISTEMA]: ¡Usuario '" + usuario + "' desbloqueado correctamente!"
             : "[ERROR]: No se pudo desbloquear al usuario. Intenta de nuevo.";
@@ -843,7 +1063,7 @@ public class UnCliente implements Runnable {
     private void mostrarMisBloqueados() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> bloqueados = ServidorMulti.obtenerBloqueados(nombreCliente);
+        java.util.List<String> bloqueados = servidor.obtenerBloqueados(idUsuario);
         if (bloqueados.isEmpty()) {
             salida.writeUTF("[SISTEMA]: No tienes usuarios bloqueados.");
             return;
@@ -858,19 +1078,14 @@ public class UnCliente implements Runnable {
     
     private String formatearListaUsuarios(java.util.List<String> usuarios) {
         return usuarios.stream()
-            .map(u -> u + (ServidorMulti.clientes.containsKey(u) ? "[ON]" : "[OFF]"))
+            .map(u -> u + (servidor.sesiones.estaConectado(u) ? "[ON]" : "[OFF]"))
             .reduce((a, b) -> a + ", " + b)
             .orElse("");
     }
     
     private void invitarAJugarGato() throws IOException {
         if (!verificarAutenticacion()) return;
-        
-        if (ServidorMulti.tienePartidaActiva(nombreCliente)) {
-            salida.writeUTF("[ERROR]: Ya tienes una partida activa. Solo puedes jugar una partida a la vez.");
-            salida.writeUTF("[INFO]: Usa 'partidas' para ver tu partida actual o 'rendirse' para abandonarla.");
-            return;
-        }
+        if (!verificarSinPartidaActiva()) return;
     
         mostrarAyudaGato();
         salida.writeUTF("");
@@ -880,16 +1095,22 @@ public class UnCliente implements Runnable {
         
         salida.writeUTF("[USUARIOS ONLINE]: " + usuariosDisponibles);
         salida.writeUTF("[SISTEMA]: Escribe el nombre del usuario:");
-        
-        String invitado = entrada.readUTF().trim();
-        if (!invitado.isEmpty()) enviarInvitacionJuego(invitado);
-        else salida.writeUTF("[SISTEMA]: Operación cancelada.");
+        preguntar(cancelableSiVacia(UnCliente::enviarInvitacionJuego));
+    }
+    
+    private boolean verificarSinPartidaActiva() throws IOException {
+        if (servidor.tienePartidaActiva(idUsuario)) {
+            salida.writeUTF("[ERROR]: Ya tienes una partida activa. Solo puedes jugar una partida a la vez.");
+            salida.writeUTF("[INFO]: Usa 'partidas' para ver tu partida actual o 'rendirse' para abandonarla.");
+            return false;
+        }
+        return true;
     }
     
     private String obtenerUsuariosParaJugar() {
-        return ServidorMulti.clientes.keySet().stream()
+        return servidor.sesiones.nombresConectados().stream()
             .filter(usuario -> !usuario.equals(nombreCliente) && !usuario.startsWith(PREFIJO_INVITADO))
-            .map(usuario -> usuario + (ServidorMulti.tienePartidaActiva(usuario) ? "[OCUPADO]" : ""))
+            .map(usuario -> usuario + (servidor.tienePartidaActiva(servidor.sesiones.idDe(usuario)) ? "[OCUPADO]" : ""))
             .reduce((a, b) -> a + ", " + b)
             .orElse("");
     }
@@ -897,13 +1118,62 @@ public class UnCliente implements Runnable {
     private void enviarInvitacionJuego(String invitado) throws IOException {
         if (!validarInvitacionJuego(invitado)) return;
         
-        if (ServidorMulti.enviarInvitacionGato(nombreCliente, invitado)) {
-            Optional.ofNullable(ServidorMulti.clientes.get(invitado))
-                .ifPresent(cliente -> enviarSafe(cliente, "[GATO]: " + nombreCliente + " te invita a jugar. Escribe 'aceptar' o 'rechazar'."));
-            salida.writeUTF("[SISTEMA]: Invitación enviada a " + invitado + ".");
-            System.out.println(nombreCliente + " invitó a jugar a " + invitado);
-        } else {
-            salida.writeUTF("[ERROR]: " + invitado + " ya tiene una invitación pendiente.");
+        UnCliente clienteInvitado = servidor.sesiones.obtener(invitado);
+        if (clienteInvitado == null) {
+            salida.writeUTF("[ERROR]: El usuario no está conectado.");
+            return;
+        }
+        
+        switch (servidor.invitaciones.invitar(this, clienteInvitado)) {
+            case ENVIADA:
+                clienteInvitado.avisar("[GATO]: " + nombreCliente + " te invita a jugar. Escribe 'aceptar " + nombreCliente + "' o 'rechazar " + nombreCliente + "'.");
+                salida.writeUTF("[SISTEMA]: Invitación enviada a " + invitado + ".");
+                System.out.println(nombreCliente + " invitó a jugar a " + invitado);
+                break;
+            case DUPLICADA:
+                salida.writeUTF("[ERROR]: Ya le enviaste una invitación a " + invitado + ".");
+                break;
+            case BUZON_LLENO:
+                salida.writeUTF("[ERROR]: " + invitado + " tiene demasiadas invitaciones pendientes.");
+                break;
+        }
+    }
+    
+    private void mostrarInvitacionesPendientes() throws IOException {
+        java.util.List<String> invitadores = servidor.invitaciones.pendientesDe(this);
+        if (invitadores.isEmpty()) {
+            salida.writeUTF("[SISTEMA]: No tienes invitaciones pendientes.");
+            return;
+        }
+        salida.writeUTF("[SISTEMA]: Invitaciones pendientes de: " + String.join(", ", invitadores));
+    }
+    
+    // Sin nombre se toma la invitación más antigua.
+    private GestorInvitaciones.Invitacion tomarInvitacion(String invitador, boolean aceptar) throws IOException {
+        UnCliente clienteInvitador = null;
+        if (invitador != null && !invitador.isEmpty()) {
+            clienteInvitador = servidor.sesiones.obtener(invitador);
+            if (clienteInvitador == null) {
+                salida.writeUTF("[ERROR]: No tienes una invitación de " + invitador + ".");
+                return null;
+            }
+        }
+        
+        GestorInvitaciones.Invitacion invitacion = aceptar
+            ? servidor.invitaciones.aceptar(this, clienteInvitador)
+            : servidor.invitaciones.rechazar(this, clienteInvitador);
+        if (invitacion == null) {
+            salida.writeUTF(clienteInvitador == null
+                ? "[ERROR]: No tienes invitaciones pendientes."
+                : "[ERROR]: No tienes una invitación de " + invitador + ".");
+        }
+        return invitacion;
+    }
+    
+    private void cancelarInvitaciones() {
+        for (GestorInvitaciones.Invitacion invitacion : servidor.invitaciones.cancelarTodas(this)) {
+            UnCliente otro = invitacion.getInvitador() == this ? invitacion.getInvitado() : invitacion.getInvitador();
+            otro.avisar("[GATO]: Se canceló la invitación con " + nombreCliente + " porque salió.");
         }
     }
     
@@ -912,131 +1182,121 @@ public class UnCliente implements Runnable {
             salida.writeUTF("[ERROR]: No puedes jugar contigo mismo.");
             return false;
         }
-        if (!ServidorMulti.clientes.containsKey(invitado)) {
+        if (!servidor.sesiones.estaConectado(invitado)) {
             salida.writeUTF("[ERROR]: El usuario no está conectado.");
             return false;
         }
-        if (ServidorMulti.tienePartidaActiva(invitado)) {
+        if (servidor.tienePartidaActiva(servidor.sesiones.idDe(invitado))) {
             salida.writeUTF("[ERROR]: " + invitado + " ya está jugando una partida.");
             return false;
         }
-        if (ServidorMulti.obtenerPartida(nombreCliente, invitado) != null) {
+        if (servidor.obtenerPartida(idUsuario, servidor.sesiones.idDe(invitado)) != null) {
             salida.writeUTF("[ERROR]: Ya tienes una partida activa con " + invitado + ".");
             return false;
         }
         return true;
     }
     
-    private void aceptarInvitacionGato() throws IOException {
+    private void aceptarInvitacionGato(String nombreInvitador) throws IOException {
         if (!verificarAutenticacion()) return;
         
-        if (ServidorMulti.tienePartidaActiva(nombreCliente)) {
+        if (servidor.tienePartidaActiva(idUsuario)) {
             salida.writeUTF("[ERROR]: Ya tienes una partida activa. Solo puedes jugar una partida a la vez.");
             return;
         }
         
-        String invitador = ServidorMulti.obtenerInvitador(nombreCliente);
-        if (invitador == null) {
-            salida.writeUTF("[ERROR]: No tienes invitaciones pendientes.");
-            return;
-        }
-        
-        ServidorMulti.eliminarInvitacion(nombreCliente);
+        GestorInvitaciones.Invitacion invitacion = tomarInvitacion(nombreInvitador, true);
+        if (invitacion == null) return;
         
-        if (!ServidorMulti.clientes.containsKey(invitador)) {
+        String invitador = invitacion.getNombreInvitador();
+        if (servidor.sesiones.obtener(invitador) != invitacion.getInvitador()) {
             salida.writeUTF("[ERROR]: El invitador ya no está conectado.");
             return;
         }
         
-        if (ServidorMulti.crearPartida(invitador, nombreCliente)) {
-            iniciarPartida(invitador);
+        PartidaGato partida = servidor.crearPartida(invitacion.getInvitador(), this);
+        if (partida != null) {
+            iniciarPartida(invitador, partida);
         } else {
             salida.writeUTF("[ERROR]: No se pudo crear la partida.");
         }
     }
     
-    private void iniciarPartida(String invitador) throws IOException {
-        PartidaGato partida = ServidorMulti.obtenerPartida(invitador, nombreCliente);
-        UnCliente clienteInvitador = ServidorMulti.clientes.get(invitador);
+    private void iniciarPartida(String invitador, PartidaGato partida) throws IOException {
+        UnCliente clienteInvitador = servidor.sesiones.obtener(invitador);
         enviarInformacionPartida(partida, invitador, clienteInvitador);
     }
     
     private void enviarInformacionPartida(PartidaGato partida, String oponente, UnCliente clienteOponente) throws IOException {
         String primerJugador = partida.getTurnoActual();
-        enviarMensajesInicioPartida(partida, oponente, primerJugador, partida.getSimbolo(nombreCliente));
+        enviarMensajesInicioPartida(salida, partida, oponente, primerJugador, partida.getSimbolo(idUsuario));
         
         Optional.ofNullable(clienteOponente)
             .ifPresent(cliente -> {
                 try {
-                    cliente.enviarMensajesInicioPartida(partida, nombreCliente, primerJugador, partida.getSimbolo(oponente));
+                    SalidaRespuesta bloque = cliente.nuevoBloque();
+                    cliente.enviarMensajesInicioPartida(new DataOutputStream(bloque), partida, nombreCliente, primerJugador, partida.getSimbolo(partida.getIdOponente(idUsuario)));
+                    bloque.flush();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
             });
     }
     
-    private void enviarMensajesInicioPartida(PartidaGato partida, String oponente, String primerJugador, char simbolo) throws IOException {
-        salida.writeUTF("[GATO]: ¡Partida iniciada contra " + oponente + "!");
-        salida.writeUTF("[GATO]: Tú eres '" + simbolo + "'");
-        salida.writeUTF(primerJugador.equals(nombreCliente) ? "[GATO]: ¡Es TU TURNO!" : "[GATO]: Es el turno de " + oponente);
-        salida.writeUTF(partida.obtenerTableroTexto());
-        enviarInstruccionesPartida(oponente);
-    }
-    
-    private void enviarInstruccionesPartida(String oponente) throws IOException {
-        salida.writeUTF("");
-        salida.writeUTF("=== CHAT DE PARTIDA ACTIVADO ===");
-        salida.writeUTF("Los mensajes que escribas solo los verá " + oponente);
-        salida.writeUTF("NO recibirás mensajes del chat general mientras juegas.");
-        salida.writeUTF("Para volver al chat general, finaliza la partida.");
-        salida.writeUTF("");
-        salida.writeUTF("=== CÓMO JUGAR ===");
-        salida.writeUTF("Escribe: fila columna (ejemplo: 1 2)");
-        salida.writeUTF("O también: jugar fila columna (ejemplo: jugar 2 3)");
-        salida.writeUTF("");
-        salida.writeUTF("Coordenadas del tablero:");
-        salida.writeUTF("  Fila 1: posiciones 1 1, 1 2, 1 3 (arriba)");
-        salida.writeUTF("  Fila 2: posiciones 2 1, 2 2, 2 3 (centro)");
-        salida.writeUTF("  Fila 3: posiciones 3 1, 3 2, 3 3 (abajo)");
-        salida.writeUTF("");
-        salida.writeUTF("Comandos útiles:");
-        salida.writeUTF("  partidas - Ver estado del tablero");
-        salida.writeUTF("  rendirse - Abandonar partida");
-    }
-    
-    private void rechazarInvitacionGato() throws IOException {
+    private void enviarMensajesInicioPartida(DataOutputStream destino, PartidaGato partida, String oponente, String primerJugador, char simbolo) throws IOException {
+        destino.writeUTF("[GATO]: ¡Partida iniciada contra " + oponente + "!");
+        destino.writeUTF("[GATO]: Tú eres '" + simbolo + "'");
+        destino.writeUTF(primerJugador.equals(nombreCliente) ? "[GATO]: ¡Es TU TURNO!" : "[GATO]: Es el turno de " + oponente);
+        destino.writeUTF(partida.obtenerTableroTexto());
+        enviarInstruccionesPartida(destino, oponente);
+    }
+    
+    private void enviarInstruccionesPartida(DataOutputStream destino, String oponente) throws IOException {
+        destino.writeUTF("");
+        destino.writeUTF("=== CHAT DE PARTIDA ACTIVADO ===");
+        destino.writeUTF("Los mensajes que escribas solo los verá " + oponente);
+        destino.writeUTF("NO recibirás mensajes del chat general mientras juegas.");
+        destino.writeUTF("Para volver al chat general, finaliza la partida.");
+        destino.writeUTF("");
+        destino.writeUTF("=== CÓMO JUGAR ===");
+        destino.writeUTF("Escribe: fila columna (ejemplo: 1 2)");
+        destino.writeUTF("O también: jugar fila columna (ejemplo: jugar 2 3)");
+        destino.writeUTF("");
+        destino.writeUTF("Coordenadas del tablero:");
+        destino.writeUTF("  Fila 1: posiciones 1 1, 1 2, 1 3 (arriba)");
+        destino.writeUTF("  Fila 2: posiciones 2 1, 2 2, 2 3 (centro)");
+        destino.writeUTF("  Fila 3: posiciones 3 1, 3 2, 3 3 (abajo)");
+        destino.writeUTF("");
+        destino.writeUTF("Comandos útiles:");
+        destino.writeUTF("  partidas - Ver estado del tablero");
+        destino.writeUTF("  rendirse - Abandonar partida");
+    }
+    
+    private void rechazarInvitacionGato(String nombreInvitador) throws IOException {
         if (!verificarAutenticacion()) return;
         
-        String invitador = ServidorMulti.obtenerInvitador(nombreCliente);
-        if (invitador == null) {
-            salida.writeUTF("[ERROR]: No tienes invitaciones pendientes.");
-            return;
-        }
+        GestorInvitaciones.Invitacion invitacion = tomarInvitacion(nombreInvitador, false);
+        if (invitacion == null) return;
         
-        ServidorMulti.eliminarInvitacion(nombreCliente);
-        salida.writeUTF("[SISTEMA]: Invitación rechazada.");
-        
-        Optional.ofNullable(ServidorMulti.clientes.get(invitador))
-            .ifPresent(cliente -> enviarSafe(cliente, "[GATO]: " + nombreCliente + " rechazó tu invitación."));
+        salida.writeUTF("[SISTEMA]: Invitación de " + invitacion.getNombreInvitador() + " rechazada.");
+        invitacion.getInvitador().avisar("[GATO]: " + nombreCliente + " rechazó tu invitación.");
     }
     
     private void mostrarPartidasActivas() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<PartidaGato> partidas = ServidorMulti.obtenerPartidasDeJugador(nombreCliente);
-        if (partidas.isEmpty()) {
+        PartidaGato partida = partidaActual.get();
+        if (partida == null) {
             salida.writeUTF("[SISTEMA]: No tienes partidas activas.");
             return;
         }
         
         salida.writeUTF("[SISTEMA]: === TUS PARTIDAS ===");
-        for (int i = 0; i < partidas.size(); i++) {
-            mostrarDetallesPartida(partidas.get(i), i + 1);
-        }
+        mostrarDetallesPartida(partida, 1);
     }
     
     private void mostrarDetallesPartida(PartidaGato partida, int numero) throws IOException {
-        String oponente = partida.getOponente(nombreCliente);
+        String oponente = partida.getOponente(idUsuario);
         String estado = partida.isTerminado() ? "TERMINADA" : "EN CURSO";
         String turno = partida.isTerminado() ? "" : " - Turno de: " + partida.getTurnoActual();
         
@@ -1044,68 +1304,80 @@ public class UnCliente implements Runnable {
         salida.writeUTF(partida.obtenerTableroTexto());
     }
     
-    private void realizarMovimientoGato(String comando) throws IOException {
+    // Lee "fila columna" a partir de la posición dada recorriendo los caracteres, sin partir la
+    // cadena ni armar otras. Sirve para "jugar 1 2" y para el atajo "1 2".
+    private void realizarMovimientoGato(String mensaje, int desde) throws IOException {
         if (!verificarAutenticacion()) return;
         
-        int[] coordenadas = parsearCoordenadas(comando);
-        if (coordenadas == null) return;
-        
-        Optional.ofNullable(obtenerPartidaConTurno())
-            .map(partida -> {
-                try {
-                    if (partida.realizarMovimiento(nombreCliente, coordenadas[0], coordenadas[1])) {
-                        procesarMovimientoExitoso(partida);
-                    } else {
-                        salida.writeUTF("[ERROR]: Movimiento inválido. La casilla debe estar vacía y en el rango 1-3.");
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                return true;
-            })
-            .orElseGet(() -> {
-                try {
-                    salida.writeUTF("[ERROR]: No es tu turno en ninguna partida o no tienes partidas activas.");
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                return false;
-            });
-    }
-    
-    private int[] parsearCoordenadas(String comando) throws IOException {
-        String[] partes = comando.split("\\s+");
-        if (partes.length != 3) {
+        int inicioFila = saltarEspacios(mensaje, desde);
+        int finFila = finDePalabra(mensaje, inicioFila);
+        int inicioColumna = saltarEspacios(mensaje, finFila);
+        int finColumna = finDePalabra(mensaje, inicioColumna);
+        if (inicioFila == finFila || inicioColumna == finColumna || saltarEspacios(mensaje, finColumna) != mensaje.length()) {
             salida.writeUTF("[ERROR]: Formato incorrecto. Usa: jugar fila columna (ej: jugar 1 2)");
-            return null;
+            return;
         }
         
-        try {
-            return new int[]{Integer.parseInt(partes[1]) - 1, Integer.parseInt(partes[2]) - 1};
-        } catch (NumberFormatException e) {
+        int fila = leerNumero(mensaje, inicioFila, finFila);
+        int columna = leerNumero(mensaje, inicioColumna, finColumna);
+        if (fila < 0 || columna < 0) {
             salida.writeUTF("[ERROR]: Fila y columna deben ser números del 1 al 3.");
-            return null;
+            return;
+        }
+        
+        aplicarMovimientoGato(fila - 1, columna - 1);
+    }
+    
+    private static int saltarEspacios(String texto, int i) {
+        while (i < texto.length() && Character.isWhitespace(texto.charAt(i))) i++;
+        return i;
+    }
+    
+    private static int finDePalabra(String texto, int i) {
+        while (i < texto.length() && !Character.isWhitespace(texto.charAt(i))) i++;
+        return i;
+    }
+    
+    // -1 si no son solo dígitos; con más de 9 tampoco, para no desbordar.
+    private static int leerNumero(String texto, int inicio, int fin) {
+        if (fin - inicio > 9) return -1;
+        int valor = 0;
+        for (int i = inicio; i < fin; i++) {
+            char c = texto.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            valor = valor * 10 + (c - '0');
         }
+        return valor;
     }
     
-    private PartidaGato obtenerPartidaConTurno() {
-        return ServidorMulti.obtenerPartidasDeJugador(nombreCliente).stream()
-            .filter(p -> !p.isTerminado() && p.getTurnoActual().equals(nombreCliente))
-            .findFirst()
-            .orElse(null);
+    // La partida sale directo de la sesión; el turno se vuelve a revisar dentro de realizarMovimiento.
+    private void aplicarMovimientoGato(int fila, int columna) throws IOException {
+        PartidaGato partida = partidaActual.get();
+        if (partida == null || partida.isTerminado() || partida.getIdTurno() != idUsuario) {
+            salida.writeUTF("[ERROR]: No es tu turno en ninguna partida o no tienes partidas activas.");
+            return;
+        }
+        
+        if (partida.realizarMovimiento(idUsuario, fila, columna)) {
+            procesarMovimientoExitoso(partida);
+        } else {
+            salida.writeUTF("[ERROR]: Movimiento inválido. La casilla debe estar vacía y en el rango 1-3.");
+        }
     }
     
     private void procesarMovimientoExitoso(PartidaGato partida) throws IOException {
-        String oponente = partida.getOponente(nombreCliente);
-        UnCliente clienteOponente = ServidorMulti.clientes.get(oponente);
+        String oponente = partida.getOponente(idUsuario);
+        UnCliente clienteOponente = servidor.sesiones.obtener(partida.getIdOponente(idUsuario));
+        
+        String tablero = partida.obtenerTableroTexto();
         
         salida.writeUTF("[GATO]: Movimiento realizado.");
-        salida.writeUTF(partida.obtenerTableroTexto());
+        salida.writeUTF(tablero);
         
-        Optional.ofNullable(clienteOponente).ifPresent(cliente -> {
-            enviarSafe(cliente, "[GATO]: " + nombreCliente + " realizó un movimiento.");
-            enviarSafe(cliente, partida.obtenerTableroTexto());
-        });
+        if (clienteOponente != null) {
+            enviarSafe(clienteOponente, "[GATO]: " + nombreCliente + " realizó un movimiento.");
+            enviarSafe(clienteOponente, tablero);
+        }
         
         if (partida.isTerminado()) {
             procesarFinDePartida(partida, oponente, clienteOponente);
@@ -1117,7 +1389,7 @@ public class UnCliente implements Runnable {
     private void procesarFinDePartida(PartidaGato partida, String oponente, UnCliente clienteOponente) throws IOException {
         String ganador = partida.getGanador();
         
-        ServidorMulti.registrarResultadoPartida(partida.getJugador1(), partida.getJugador2(), ganador);
+        servidor.registrarResultadoPartida(partida.getIdJugador1(), partida.getIdJugador2(), partida.getIdGanador());
         
         enviarResultadoPartida(ganador, oponente, clienteOponente);
         
@@ -1125,7 +1397,7 @@ public class UnCliente implements Runnable {
         Optional.ofNullable(clienteOponente)
             .ifPresent(cliente -> enviarSafe(cliente, "[SISTEMA]: Chat de partida desactivado. Tus mensajes ahora van al grupo: " + cliente.grupoActual));
         
-        ServidorMulti.finalizarPartida(partida.getJugador1(), partida.getJugador2());
+        servidor.finalizarPartida(partida);
     }
     
     private void enviarResultadoPartida(String ganador, String oponente, UnCliente clienteOponente) throws IOException {
@@ -1146,7 +1418,7 @@ public class UnCliente implements Runnable {
     
     private void notificarCambioTurno(PartidaGato partida, String oponente, UnCliente clienteOponente) throws IOException {
         salida.writeUTF("[GATO]: Espera el turno de " + oponente);
-        Optional.ofNullable(clienteOponente).ifPresent(cliente -> enviarSafe(cliente, "[GATO]: ¡Es TU TURNO!"));
+        if (clienteOponente != null) enviarSafe(clienteOponente, "[GATO]: ¡Es TU TURNO!");
     }
     
     private void rendirseEnPartida() throws IOException {
@@ -1172,27 +1444,28 @@ public class UnCliente implements Runnable {
     }
     
     private void ejecutarRendicion(PartidaGato partida) throws IOException {
-        String oponente = partida.getOponente(nombreCliente);
-        partida.abandonar(nombreCliente);
+        String oponente = partida.getOponente(idUsuario);
+        UnCliente clienteOponente = servidor.sesiones.obtener(partida.getIdOponente(idUsuario));
+        partida.abandonar(idUsuario);
         
-        ServidorMulti.registrarResultadoPartida(partida.getJugador1(), partida.getJugador2(), oponente);
+        servidor.registrarResultadoPartida(partida.getIdJugador1(), partida.getIdJugador2(), partida.getIdOponente(idUsuario));
         
         salida.writeUTF("[GATO]: Te has rendido. " + oponente + " gana la partida.");
         salida.writeUTF("[SISTEMA]: Chat de partida desactivado. Volviste al grupo: " + grupoActual);
         
-        Optional.ofNullable(ServidorMulti.clientes.get(oponente)).ifPresent(cliente -> {
+        Optional.ofNullable(clienteOponente).ifPresent(cliente -> {
             enviarSafe(cliente, "[GATO]: " + nombreCliente + " se rindió. ¡Has ganado!");
             enviarSafe(cliente, "[SISTEMA]: Chat de partida desactivado. Volviste al grupo: " + cliente.grupoActual);
         });
         
-        ServidorMulti.finalizarPartida(partida.getJugador1(), partida.getJugador2());
+        servidor.finalizarPartida(partida);
         System.out.println(nombreCliente + " se rindió en la partida contra " + oponente);
     }
     
     private void mostrarRankingGeneral() throws IOException {
         if (!verificarAutenticacion()) return;
         
-        java.util.List<String> ranking = ServidorMulti.obtenerRankingGeneral();
+        java.util.List<String> ranking = servidor.obtenerRankingGeneral();
         
         if (ranking.isEmpty()) {
             salida.writeUTF("[SISTEMA]: Aún no hay partidas registradas.");
@@ -1222,15 +1495,11 @@ public class UnCliente implements Runnable {
         
         salida.writeUTF("[JUGADORES]: " + usuariosDisponibles);
         salida.writeUTF("[SISTEMA]: Escribe el nombre del jugador:");
-        
-        String oponente = entrada.readUTF().trim();
-        
-        if (oponente.isEmpty()) {
-            salida.writeUTF("[SISTEMA]: Operación cancelada.");
-            return;
-        }
-        
-        if (!ServidorMulti.usuarios.containsKey(oponente)) {
+        preguntar(cancelableSiVacia(UnCliente::procesarConsultaVs));
+    }
+    
+    private void procesarConsultaVs(String oponente) throws IOException {
+        if (!servidor.sesiones.existeUsuario(oponente)) {
             salida.writeUTF("[ERROR]: El jugador '" + oponente + "' no existe.");
             return;
         }
@@ -1244,16 +1513,16 @@ public class UnCliente implements Runnable {
     }
     
     private String obtenerUsuariosConEstadisticas() {
-        return ServidorMulti.usuarios.keySet().stream()
+        return servidor.sesiones.nombresUsuarios().stream()
             .filter(usuario -> !usuario.equals(nombreCliente))
-            .map(usuario -> usuario + (ServidorMulti.clientes.containsKey(usuario) ? "[ON]" : "[OFF]"))
+            .map(usuario -> usuario + (servidor.sesiones.estaConectado(usuario) ? "[ON]" : "[OFF]"))
             .reduce((a, b) -> a + ", " + b)
             .orElse("");
     }
     
     private void mostrarEstadisticasEnfrentamiento(String oponente) throws IOException {
         BaseDatos.EstadisticasEnfrentamiento stats = 
-            ServidorMulti.obtenerEstadisticasEnfrentamiento(nombreCliente, oponente);
+            servidor.obtenerEstadisticasEnfrentamiento(idUsuario, servidor.sesiones.idDe(oponente));
         
         salida.writeUTF("");
         salida.writeUTF("=== ESTADÍSTICAS: " + nombreCliente + " vs " + oponente + " ===");
@@ -1325,8 +1594,9 @@ public class UnCliente implements Runnable {
     private void mostrarAyudaGato() throws IOException {
         salida.writeUTF("=== COMANDOS DEL JUEGO GATO ===");
         salida.writeUTF("gato - Invitar a alguien a jugar");
-        salida.writeUTF("aceptar - Aceptar invitación de juego");
-        salida.writeUTF("rechazar - Rechazar invitación de juego");
+        salida.writeUTF("aceptar [usuario] - Aceptar invitación de juego (sin usuario, la más antigua)");
+        salida.writeUTF("rechazar [usuario] - Rechazar invitación de juego");
+        salida.writeUTF("invitaciones - Ver invitaciones pendientes");
         salida.writeUTF("partidas - Ver tus partidas activas");
         salida.writeUTF("");
         salida.writeUTF("=== DURANTE UNA PARTIDA ===");
@@ -1355,21 +1625,32 @@ public class UnCliente implements Runnable {
     }
     
     private void registrarUsuario() throws IOException {
-        if (autenticado) {
-            salida.writeUTF("[ERROR]: Ya tienes una sesión activa como: " + nombreCliente);
-            salida.writeUTF("[ERROR]: Debes escribir 'salir' primero para cerrar tu sesión actual.");
-            return;
-        }
+        if (!verificarSinSesion()) return;
         
         salida.writeUTF("[SISTEMA]: === REGISTRO ===");
         salida.writeUTF("[SISTEMA]: Ingresa tu nuevo nombre de usuario:");
-        
-        String nuevoNombre = entrada.readUTF().trim();
-        
+        preguntar((c, m) -> c.recibirNombreRegistro(m.trim()));
+    }
+    
+    private void recibirNombreRegistro(String nuevoNombre) throws IOException {
         if (!validarNombreUsuario(nuevoNombre) || !validarDisponibilidadNombre(nuevoNombre)) return;
         
         salida.writeUTF("[SISTEMA]: Ingresa tu contraseña:");
-        String password = entrada.readUTF().trim();
+        preguntar((c, m) -> c.procesarRegistro(nuevoNombre, m.trim()));
+    }
+    
+    private boolean verificarSinSesion() throws IOException {
+        if (autenticado) {
+            salida.writeUTF("[ERROR]: Ya tienes una sesión activa como: " + nombreCliente);
+            salida.writeUTF("[ERROR]: Debes escribir 'salir' primero para cerrar tu sesión actual.");
+            return false;
+        }
+        return true;
+    }
+    
+    // El nombre se vuelve a validar porque pudo ocuparse mientras se esperaba la contraseña.
+    private void procesarRegistro(String nuevoNombre, String password) throws IOException {
+        if (!validarNombreUsuario(nuevoNombre) || !validarDisponibilidadNombre(nuevoNombre)) return;
         
         if (password.isEmpty()) {
             salida.writeUTF("[ERROR]: La contraseña no puede estar vacía.");
@@ -1380,15 +1661,16 @@ public class UnCliente implements Runnable {
     }
     
     private boolean validarNombreUsuario(String nombre) throws IOException {
-        boolean valido = !nombre.isEmpty() && !nombre.contains(" ") && !nombre.contains("@");
+        boolean valido = !nombre.isEmpty() && !nombre.contains(" ") && !nombre.contains("@")
+            && !nombre.startsWith(PREFIJO_INVITADO);
         if (!valido) {
-            salida.writeUTF("[ERROR]: Nombre inválido. No puede contener espacios ni '@'. Intenta de nuevo escribiendo 'registrar'.");
+            salida.writeUTF("[ERROR]: Nombre inválido. No puede contener espacios ni '@' ni empezar con '" + PREFIJO_INVITADO + "'. Intenta de nuevo escribiendo 'registrar'.");
         }
         return valido;
     }
     
     private boolean validarDisponibilidadNombre(String nombre) throws IOException {
-        boolean disponible = ServidorMulti.nombreDisponible(nombre) && !ServidorMulti.usuarios.containsKey(nombre);
+        boolean disponible = servidor.nombreDisponible(nombre) && !servidor.sesiones.existeUsuario(nombre);
         if (!disponible) {
             salida.writeUTF("[ERROR]: El nombre '" + nombre + "' ya está en uso.");
         }
@@ -1396,10 +1678,16 @@ public class UnCliente implements Runnable {
     }
     
     private void completarRegistro(String nuevoNombre, String password) throws IOException {
-        ServidorMulti.registrarUsuario(nuevoNombre, password);
-        
         String nombreAnterior = nombreCliente;
-        cambiarNombreCliente(nuevoNombre);
+        int id = servidor.registrarUsuario(nuevoNombre, password);
+        if (id < 0) {
+            salida.writeUTF("[ERROR]: No se pudo completar el registro. Intenta de nuevo más tarde.");
+            return;
+        }
+        if (id == 0 || !cambiarNombreCliente(nuevoNombre)) {
+            salida.writeUTF("[ERROR]: El nombre '" + nuevoNombre + "' ya está en uso.");
+            return;
+        }
         autenticado = true;
         mensajesEnviados = 0;
         grupoActual = GRUPO_PREDETERMINADO;
@@ -1414,37 +1702,36 @@ public class UnCliente implements Runnable {
     }
     
     private void iniciarSesion() throws IOException {
-        if (autenticado) {
-            salida.writeUTF("[ERROR]: Ya tienes una sesión activa como: " + nombreCliente);
-            salida.writeUTF("[ERROR]: Debes escribir 'salir' primero para cerrar tu sesión actual.");
-            return;
-        }
+        if (!verificarSinSesion()) return;
         
         salida.writeUTF("[SISTEMA]: === INICIO DE SESIÓN ===");
         salida.writeUTF("[SISTEMA]: Ingresa tu nombre de usuario:");
-        String nombre = entrada.readUTF().trim();
-        
+        preguntar((c, m) -> c.recibirNombreInicioSesion(m.trim()));
+    }
+    
+    private void recibirNombreInicioSesion(String nombre) throws IOException {
         salida.writeUTF("[SISTEMA]: Ingresa tu contraseña:");
-        String password = entrada.readUTF().trim();
-        
-        if (!ServidorMulti.autenticarUsuario(nombre, password)) {
+        preguntar((c, m) -> c.procesarInicioSesion(nombre, m.trim()));
+    }
+    
+    private void procesarInicioSesion(String nombre, String password) throws IOException {
+        if (!servidor.autenticarUsuario(nombre, password)) {
             salida.writeUTF("[ERROR]: Usuario o contraseña incorrectos.");
             return;
         }
         
-        if (!ServidorMulti.nombreDisponible(nombre)) {
-            salida.writeUTF("[ERROR]: Este usuario ya tiene una sesión activa en otro dispositivo.");
-            salida.writeUTF("[ERROR]: Debes cerrar sesión desde el otro dispositivo primero.");
-            salida.writeUTF("[INFO]: Si no fuiste tú quien inició sesión, tu cuenta puede estar comprometida.");
-            return;
-        }
-        
         completarInicioSesion(nombre);
     }
     
+    // Reclamar el nombre es atómico: de dos inicios de sesión simultáneos solo uno lo consigue.
     private void completarInicioSesion(String nombre) throws IOException {
         String nombreAnterior = nombreCliente;
-        cambiarNombreCliente(nombre);
+        if (!cambiarNombreCliente(nombre)) {
+            salida.writeUTF("[ERROR]: Este usuario ya tiene una sesión activa en otro dispositivo.");
+            salida.writeUTF("[ERROR]: Debes cerrar sesión desde el otro dispositivo primero.");
+            salida.writeUTF("[INFO]: Si no fuiste tú quien inició sesión, tu cuenta puede estar comprometida.");
+            return;
+        }
         autenticado = true;
         mensajesEnviados = 0;
         grupoActual = GRUPO_PREDETERMINADO;
@@ -1459,29 +1746,17 @@ public class UnCliente implements Runnable {
     }
 
     private void notificarUnionGrupo(String nombreGrupo) {
-        java.util.List<String> miembros = ServidorMulti.obtenerMiembrosGrupo(nombreGrupo);
-        String mensaje = "[SISTEMA]: " + nombreCliente + " se ha conectado.";
-        
-        for (String miembro : miembros) {
-            if (miembro.equals(nombreCliente)) continue;
-            
-            UnCliente cliente = ServidorMulti.clientes.get(miembro);
-            if (cliente != null && !estaEnPartidaActiva(miembro)) {
-                if (cliente.grupoActual.equals(nombreGrupo)) {
-                    enviarSafe(cliente, mensaje);
-                }
-            }
-        }
+        servidor.grupos.avisar(nombreGrupo, idUsuario, "[SISTEMA]: " + nombreCliente + " se ha conectado.");
     }
     
     private void mostrarResumenMensajesNoLeidos() throws IOException {
         try {
-            java.util.List<String> misGrupos = ServidorMulti.obtenerMisGrupos(nombreCliente);
+            java.util.List<String> misGrupos = servidor.obtenerMisGrupos(idUsuario);
             int totalNoLeidos = 0;
             java.util.List<String> gruposConMensajes = new java.util.ArrayList<>();
             
             for (String grupo : misGrupos) {
-                int noLeidos = ServidorMulti.contarMensajesNoLeidos(nombreCliente, grupo);
+                int noLeidos = servidor.contarMensajesNoLeidos(idUsuario, grupo);
                 if (noLeidos > 0) {
                     totalNoLeidos += noLeidos;
                     gruposConMensajes.add(grupo + " (" + noLeidos + ")");
@@ -1509,7 +1784,7 @@ public class UnCliente implements Runnable {
     private void mostrarMensajesNoLeidosAlEntrar() throws IOException {
         try {
             java.util.List<BaseDatos.MensajeGrupo> mensajesNoLeidos = 
-                ServidorMulti.obtenerMensajesNoLeidos(nombreCliente, grupoActual);
+                servidor.obtenerMensajesNoLeidos(idUsuario, grupoActual);
             
             if (!mensajesNoLeidos.isEmpty()) {
                 salida.writeUTF("");
@@ -1520,7 +1795,7 @@ public class UnCliente implements Runnable {
                 
                 for (BaseDatos.MensajeGrupo msg : mensajesNoLeidos) {
                     salida.writeUTF("[" + grupoActual + "] " + msg.remitente + ": " + msg.mensaje);
-                    ServidorMulti.actualizarUltimoMensajeLeido(nombreCliente, grupoActual, msg.id);
+                    servidor.actualizarUltimoMensajeLeido(idUsuario, grupoActual, msg.id);
                 }
                 
                 salida.writeUTF("");
@@ -1548,8 +1823,9 @@ public class UnCliente implements Runnable {
         String nombreAnterior = nombreCliente;
         
         notificarDesconexionGrupo(grupoActual);
+        cancelarInvitaciones();
         
-        cambiarNombreCliente(PREFIJO_INVITADO + System.currentTimeMillis());
+        volverAInvitado();
         autenticado = false;
         mensajesEnviados = 0;
         grupoActual = GRUPO_PREDETERMINADO;
@@ -1561,19 +1837,7 @@ public class UnCliente implements Runnable {
     }
     
     private void notificarDesconexionGrupo(String nombreGrupo) {
-        java.util.List<String> miembros = ServidorMulti.obtenerMiembrosGrupo(nombreGrupo);
-        String mensaje = "[SISTEMA]: " + nombreCliente + " se ha desconectado.";
-        
-        for (String miembro : miembros) {
-            if (miembro.equals(nombreCliente)) continue;
-            
-            UnCliente cliente = ServidorMulti.clientes.get(miembro);
-            if (cliente != null && !estaEnPartidaActiva(miembro)) {
-                if (cliente.grupoActual.equals(nombreGrupo)) {
-                    enviarSafe(cliente, mensaje);
-                }
-            }
-        }
+        servidor.grupos.avisar(nombreGrupo, idUsuario, "[SISTEMA]: " + nombreCliente + " se ha desconectado.");
     }
     
     private boolean verificarAutenticacion() throws IOException {
@@ -1590,7 +1854,101 @@ public class UnCliente implements Runnable {
     }
     
     @FunctionalInterface
-    private interface ComandoHandler {
-        boolean ejecutar() throws IOException;
+    private interface Accion {
+        void ejecutar(UnCliente cliente, String mensaje) throws IOException;
+    }
+    
+    // El nombre es con el que se cuentan las métricas, el mismo para todos sus alias; su
+    // contador se resuelve al armar la tabla, no en cada ejecución.
+    private static final class Comando {
+        final String nombre;
+        final Accion accion;
+        final LongAdder enviosAhorrados;
+        
+        Comando(String nombre, Accion accion) {
+            this(nombre, accion, SalidaRespuesta.ahorradosPor(nombre));
+        }
+        
+        private Comando(String nombre, Accion accion, LongAdder enviosAhorrados) {
+            this.nombre = nombre;
+            this.accion = accion;
+            this.enviosAhorrados = enviosAhorrados;
+        }
+        
+        // La respuesta a una pregunta cuenta como parte del comando que la hizo.
+        Comando continuar(Accion continuacion) {
+            return new Comando(nombre, continuacion, enviosAhorrados);
+        }
+    }
+    
+    private static final TablaComandos<Comando> COMANDOS_INVITADO = new TablaComandos<>();
+    private static final TablaComandos<Comando> COMANDOS_SESION = new TablaComandos<>();
+    // Por código de solicitud v2; los que no están cuentan como desconocidos.
+    private static final LongAdder[] AHORRADOS_V2 = new LongAdder[256];
+    private static final Comando MOVIMIENTO_SIMPLE = new Comando("jugar", (c, m) -> c.realizarMovimientoGato(m, 0));
+    
+    static {
+        AHORRADOS_V2[ProtocoloV2.MENSAJE] = SalidaRespuesta.ahorradosPor("mensaje");
+        AHORRADOS_V2[ProtocoloV2.PRIVADO] = SalidaRespuesta.ahorradosPor("privado");
+        AHORRADOS_V2[ProtocoloV2.REGISTRAR] = SalidaRespuesta.ahorradosPor("registrar");
+        AHORRADOS_V2[ProtocoloV2.INICIAR] = SalidaRespuesta.ahorradosPor("iniciar");
+        AHORRADOS_V2[ProtocoloV2.SALIR] = SalidaRespuesta.ahorradosPor("salir");
+        AHORRADOS_V2[ProtocoloV2.CREAR_GRUPO] = SalidaRespuesta.ahorradosPor("creargrupo");
+        AHORRADOS_V2[ProtocoloV2.ELIMINAR_GRUPO] = SalidaRespuesta.ahorradosPor("eliminargrupo");
+        AHORRADOS_V2[ProtocoloV2.UNIRSE] = SalidaRespuesta.ahorradosPor("unirse");
+        AHORRADOS_V2[ProtocoloV2.SALIR_GRUPO] = SalidaRespuesta.ahorradosPor("salirgrupo");
+        AHORRADOS_V2[ProtocoloV2.CAMBIAR_GRUPO] = SalidaRespuesta.ahorradosPor("cambiargrupo");
+        AHORRADOS_V2[ProtocoloV2.MIEMBROS] = SalidaRespuesta.ahorradosPor("miembros");
+        AHORRADOS_V2[ProtocoloV2.BLOQUEAR] = SalidaRespuesta.ahorradosPor("bloquear");
+        AHORRADOS_V2[ProtocoloV2.DESBLOQUEAR] = SalidaRespuesta.ahorradosPor("desbloquear");
+        AHORRADOS_V2[ProtocoloV2.INVITAR] = SalidaRespuesta.ahorradosPor("gato");
+        AHORRADOS_V2[ProtocoloV2.ACEPTAR] = SalidaRespuesta.ahorradosPor("aceptar");
+        AHORRADOS_V2[ProtocoloV2.RECHAZAR] = SalidaRespuesta.ahorradosPor("rechazar");
+        AHORRADOS_V2[ProtocoloV2.MOVER] = SalidaRespuesta.ahorradosPor("jugar");
+        AHORRADOS_V2[ProtocoloV2.RENDIRSE] = SalidaRespuesta.ahorradosPor("rendirse");
+        AHORRADOS_V2[ProtocoloV2.VS] = SalidaRespuesta.ahorradosPor("vs");
+        
+        registrar(COMANDOS_INVITADO, (c, m) -> c.registrarUsuario(), "registrar");
+        registrar(COMANDOS_INVITADO, (c, m) -> c.iniciarSesion(), "iniciar", "login");
+        registrar(COMANDOS_INVITADO, (c, m) -> c.cerrarSesion(), "salir", "logout");
+        registrar(COMANDOS_INVITADO, (c, m) -> c.salida.writeUTF("[ERROR]: Debes iniciar sesión o registrarte para usar este comando."), "ayuda", "help");
+        
+        registrar(COMANDOS_SESION, (c, m) -> c.cerrarSesion(), "salir", "logout");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarAyuda(), "ayuda", "help");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarUsuariosYEnviarMensaje(), "privado", "@");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarUsuariosYBloquear(), "bloquear");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarBloqueadosYDesbloquear(), "desbloquear");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarMisBloqueados(), "misbloqueados", "mis bloqueados");
+        
+        registrar(COMANDOS_SESION, (c, m) -> c.crearGrupo(), "creargrupo");
+        registrar(COMANDOS_SESION, (c, m) -> c.eliminarGrupo(), "eliminargrupo");
+        registrar(COMANDOS_SESION, (c, m) -> c.unirseAGrupo(), "unirse");
+        registrar(COMANDOS_SESION, (c, m) -> c.salirDeGrupo(), "salirgrupo");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarGruposDisponibles(), "grupos");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarMisGrupos(), "misgrupos");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarMiembrosGrupo(), "miembros");
+        registrar(COMANDOS_SESION, (c, m) -> c.cambiarGrupoActivo(), "cambiargrupo");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarGrupoActual(), "grupoactual");
+        
+        registrar(COMANDOS_SESION, (c, m) -> c.invitarAJugarGato(), "gato", "jugar");
+        registrarConArgumentos(COMANDOS_SESION, (c, m) -> c.realizarMovimientoGato(m, m.indexOf(' ')), "jugar");
+        registrar(COMANDOS_SESION, (c, m) -> c.aceptarInvitacionGato(null), "aceptar");
+        registrarConArgumentos(COMANDOS_SESION, (c, m) -> c.aceptarInvitacionGato(m.substring(m.indexOf(' ') + 1).trim()), "aceptar");
+        registrar(COMANDOS_SESION, (c, m) -> c.rechazarInvitacionGato(null), "rechazar");
+        registrarConArgumentos(COMANDOS_SESION, (c, m) -> c.rechazarInvitacionGato(m.substring(m.indexOf(' ') + 1).trim()), "rechazar");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarInvitacionesPendientes(), "invitaciones");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarPartidasActivas(), "partidas");
+        registrar(COMANDOS_SESION, (c, m) -> c.rendirseEnPartida(), "rendirse");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarRankingGeneral(), "ranking");
+        registrar(COMANDOS_SESION, (c, m) -> c.mostrarEstadisticasVs(), "vs", "estadisticas");
+    }
+    
+    private static void registrar(TablaComandos<Comando> tabla, Accion accion, String... nombres) {
+        Comando comando = new Comando(nombres[0], accion);
+        for (String nombre : nombres) tabla.exacto(nombre, comando);
+    }
+    
+    private static void registrarConArgumentos(TablaComandos<Comando> tabla, Accion accion, String nombre) {
+        tabla.conArgumentos(nombre, new Comando(nombre, accion));
     }
 }
\ No newline at end of file
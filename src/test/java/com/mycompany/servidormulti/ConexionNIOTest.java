@@ -0,0 +1,48 @@
+package com.mycompany.servidormulti;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConexionNIOTest {
+    private static final String RESPUESTA_AYUDA = "[ERROR]: Debes iniciar sesión o registrarte para usar este comando.";
+
+    // Dos líneas en el mismo envío: al contestar la primera, la sesión se asoma a la segunda y
+    // la deja en su búfer. Las dos tienen que contestarse sin que el cliente mande nada más.
+    @Test
+    void contestaSolicitudesEncadenadas(@TempDir Path directorio) throws IOException {
+        ServidorMulti.Configuracion configuracion = new ServidorMulti.Configuracion()
+                .puerto(0)
+                .rutaBD(directorio.resolve("chat.db").toString())
+                .nio(true);
+        try (ServidorMulti servidor = new ServidorMulti(configuracion).iniciar();
+             Socket socket = new Socket("localhost", servidor.getPuerto())) {
+            ByteArrayOutputStream tramas = new ByteArrayOutputStream();
+            DataOutputStream escritor = new DataOutputStream(tramas);
+            escritor.writeUTF("ayuda");
+            escritor.writeUTF("ayuda");
+            socket.getOutputStream().write(tramas.toByteArray());
+            socket.getOutputStream().flush();
+
+            socket.setSoTimeout(3000);
+            DataInputStream entrada = new DataInputStream(socket.getInputStream());
+            int respuestas = 0;
+            try {
+                while (respuestas < 2) {
+                    if (entrada.readUTF().equals(RESPUESTA_AYUDA)) respuestas++;
+                }
+            } catch (SocketTimeoutException e) {
+                // Se compara abajo.
+            }
+            assertEquals(2, respuestas);
+        }
+    }
+}
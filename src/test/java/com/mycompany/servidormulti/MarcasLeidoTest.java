@@ -0,0 +1,25 @@
+package com.mycompany.servidormulti;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MarcasLeidoTest {
+
+    // Sin inicializar la base no hay tablas, así que el guardado al cerrar sesión falla: las
+    // marcas tienen que seguir en memoria para el siguiente volcado.
+    @Test
+    void cerrarSesionConservaMarcasSiFallaElGuardado(@TempDir Path directorio) {
+        BaseDatos bd = new BaseDatos(directorio.resolve("chat.db").toString(), 1);
+        try {
+            MarcasLeido marcas = new MarcasLeido(bd);
+            marcas.marcar(1, "Todos", 5);
+            marcas.cerrarSesion(1);
+            assertEquals(5, marcas.leido(1, "Todos"));
+        } finally {
+            bd.cerrar();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.mycompany.servidormulti;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.BindException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ServidorMultiTest {
+
+    // Con el puerto ocupado iniciar() lanza el error, pero antes cierra los bucles, el escritor
+    // de la base y lo demás que ya había arrancado.
+    @Test
+    void iniciarFallidoNoDejaHilos(@TempDir Path directorio) throws Exception {
+        try (ServerSocket ocupado = new ServerSocket(0)) {
+            ServidorMulti.Configuracion configuracion = new ServidorMulti.Configuracion()
+                    .puerto(ocupado.getLocalPort())
+                    .rutaBD(directorio.resolve("chat.db").toString())
+                    .nio(true);
+            ServidorMulti servidor = new ServidorMulti(configuracion);
+            assertThrows(BindException.class, servidor::iniciar);
+        }
+        for (Thread hilo : Thread.getAllStackTraces().keySet()) {
+            if (hilo.getName().startsWith("bucle-nio-") || hilo.getName().equals("escritor-bd")) {
+                hilo.join(2000);
+                assertFalse(hilo.isAlive(), hilo.getName());
+            }
+        }
+    }
+}
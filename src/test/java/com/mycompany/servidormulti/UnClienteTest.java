@@ -0,0 +1,30 @@
+package com.mycompany.servidormulti;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import clientemulti.ClienteV2;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UnClienteTest {
+
+    // Una solicitud v2 con campos de menos se contesta con un error y la sesión sigue abierta.
+    @Test
+    void solicitudV2IncompletaNoCortaLaSesion(@TempDir Path directorio) throws Exception {
+        ServidorMulti.Configuracion configuracion = new ServidorMulti.Configuracion()
+                .puerto(0)
+                .rutaBD(directorio.resolve("chat.db").toString());
+        try (ServidorMulti servidor = new ServidorMulti(configuracion).iniciar();
+             ClienteV2 cliente = new ClienteV2("localhost", servidor.getPuerto(), linea -> {})) {
+            List<String> incompleta = cliente.enviar(ProtocoloV2.REGISTRAR, "ana").get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("[ERROR]: Faltan argumentos o vienen mal formados."), incompleta);
+
+            List<String> siguiente = cliente.enviar(ProtocoloV2.REGISTRAR, "ana", "1").get(5, TimeUnit.SECONDS);
+            assertTrue(siguiente.get(0).startsWith("[SISTEMA]: ¡Registro exitoso!"), siguiente.toString());
+        }
+    }
+}